@@ -0,0 +1,44 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заполнение сета с нуля. При presized = false сюда входят все увеличения
+ * массива (resize), при presized = true массив сразу нужного размера.
+ * Размер 50M требует большой кучи, при нехватке памяти уберите его: -p size=...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class AddBenchmark {
+    @Param({Sets.CUSTOM, Sets.CUSTOM_SHARDED, Sets.JDK})
+    public String impl;
+    @Param({Keys.INTEGER, Keys.STRING, Keys.BAD_HASH})
+    public String keyType;
+    @Param({"1000", "100000", "1000000", "10000000", "50000000"})
+    public int size;
+    @Param({"false", "true"})
+    public boolean presized;
+
+    private Object[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = Keys.generate(keyType, 0, size);
+    }
+
+    @Benchmark
+    public Set<Object> add() {
+        Set<Object> set = Sets.create(impl, size, presized);
+        for (Object key : keys) {
+            set.add(key);
+        }
+        return set;
+    }
+}
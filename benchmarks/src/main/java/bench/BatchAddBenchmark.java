@@ -0,0 +1,71 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заполнение сета пачками по batch ключей, как при чтении из очереди
+ * или файла. Три способа: add по одному ключу, addAll на каждую пачку
+ * и HashSet.addBatch, который еще и возвращает маску добавленных ключей.
+ * Пачки по 1M ключей плотные: к концу заполнения на ключ пачки
+ * приходится 16-32 ячейки массива.
+ * Половина ключей повторяется (каждый id встречается дважды в разных
+ * пачках), чтобы были и новые ключи, и уже добавленные.
+ * Время на весь поток ключей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class BatchAddBenchmark {
+    @Param({Keys.INTEGER, Keys.STRING})
+    public String keyType;
+    @Param({"10000000", "20000000"})
+    public int size;
+    @Param({"65536", "1048576"})
+    public int batch;
+
+    private Object[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new Object[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = Keys.key(keyType, i % 2 == 0 ? i : size - i);
+        }
+    }
+
+    @Benchmark
+    public Set<Object> addLoop() {
+        Set<Object> set = Sets.create(Sets.CUSTOM, 0, false);
+        for (Object key : keys) {
+            set.add(key);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public Set<Object> addAll() {
+        Set<Object> set = Sets.create(Sets.CUSTOM, 0, false);
+        List<Object> list = Arrays.asList(keys);
+        for (int from = 0; from < size; from += batch) {
+            set.addAll(list.subList(from, Math.min(size, from + batch)));
+        }
+        return set;
+    }
+
+    @Benchmark
+    public Set<Object> addBatch() {
+        Set<Object> set = Sets.create(Sets.CUSTOM, 0, false);
+        for (int from = 0; from < size; from += batch) {
+            Sets.addBatch(set, keys, from, Math.min(batch, size - from));
+        }
+        return set;
+    }
+}
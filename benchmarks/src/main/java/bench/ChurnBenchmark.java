@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Постоянное удаление и добавление при неизменном размере сета (как у кэша
+ * сессий): каждая операция удаляет самый старый ключ и добавляет новый.
+ * Ключи берутся по кругу из пула размером size + POOL, так что добавляемый
+ * ключ никогда не лежит в сете. Время на одну пару remove + add.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class ChurnBenchmark {
+    static final int POOL = 1 << 16;
+
+    @Param({Sets.CUSTOM, Sets.JDK})
+    public String impl;
+    @Param({Keys.INTEGER, Keys.STRING, Keys.BAD_HASH})
+    public String keyType;
+    @Param({"1000", "100000", "1000000", "10000000", "50000000"})
+    public int size;
+
+    private Set<Object> set;
+    private Object[] keys;
+    /**
+     * В сете лежат ключи с oldest по oldest + size - 1 (по кругу)
+     */
+    private int oldest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = Keys.generate(keyType, 0, size + POOL);
+        set = Sets.create(impl, size, false);
+        for (int i = 0; i < size; i++) {
+            set.add(keys[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL)
+    public void removeAndAdd() {
+        for (int i = 0; i < POOL; i++) {
+            set.remove(keys[oldest]);
+            int next = oldest + size;
+            if (next >= keys.length) next -= keys.length;
+            set.add(keys[next]);
+            if (++oldest == keys.length) oldest = 0;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск в заполненном сете. hitRatio - доля запросов, для которых
+ * элемент есть в сете, остальные - промахи. Время на один contains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class ContainsBenchmark {
+    static final int QUERIES = 1 << 16;
+
+    @Param({Sets.CUSTOM, Sets.CUSTOM_FROZEN, Sets.JDK})
+    public String impl;
+    @Param({Keys.INTEGER, Keys.STRING, Keys.BAD_HASH})
+    public String keyType;
+    @Param({"1000", "100000", "1000000", "10000000", "50000000"})
+    public int size;
+    @Param({"0.0", "0.3", "1.0"})
+    public double hitRatio;
+
+    private Set<Object> set;
+    private Object[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        set = Sets.create(impl, size, false);
+        for (Object key : Keys.generate(keyType, 0, size)) {
+            set.add(key);
+        }
+        set = Sets.filled(impl, set);
+        Random random = new Random(1720557871);
+        queries = new Object[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long id = random.nextInt(size);
+            if (random.nextDouble() >= hitRatio) id += size;
+            queries[i] = Keys.key(keyType, id);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int contains() {
+        int found = 0;
+        for (Object query : queries) {
+            if (set.contains(query)) found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,43 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заполнение сета строками с одинаковым hashCode (атака hash flooding).
+ * custom - только смена seed, которая от одинаковых хэш-кодов не спасает:
+ * все строки лежат одной цепочкой, и заполнение квадратичное.
+ * custom-keyed - сет переходит на SipHash, и цепочки снова короткие.
+ * java.util.HashSet для сравнения: он превращает длинные цепочки
+ * в деревья, что работает только для Comparable ключей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FloodBenchmark {
+    @Param({Sets.CUSTOM, Sets.CUSTOM_KEYED, Sets.JDK})
+    public String impl;
+    @Param({"1024", "16384"})
+    public int size;
+
+    private Object[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = Keys.generate(Keys.COLLIDING, 0, size);
+    }
+
+    @Benchmark
+    public Set<Object> add() {
+        Set<Object> set = Sets.create(impl, size, false);
+        for (Object key : keys) {
+            set.add(key);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный обход сета: итератором, через forEach и выгрузкой в готовый
+ * массив (toArray(T[])). Время на весь обход.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class IterateBenchmark {
+    @Param({Sets.CUSTOM, Sets.JDK})
+    public String impl;
+    @Param({Keys.INTEGER, Keys.STRING})
+    public String keyType;
+    @Param({"1000", "100000", "1000000", "10000000", "50000000"})
+    public int size;
+
+    private Set<Object> set;
+    private Object[] target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        set = Sets.create(impl, size, false);
+        for (Object key : Keys.generate(keyType, 0, size)) {
+            set.add(key);
+        }
+        target = new Object[set.size()];
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Object o : set) {
+            blackhole.consume(o);
+        }
+    }
+
+    @Benchmark
+    public void forEach(Blackhole blackhole) {
+        set.forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public Object[] toArray() {
+        return set.toArray(target);
+    }
+}
@@ -0,0 +1,75 @@
+package bench;
+
+/**
+ * Ключи для бенчмарков. Ключ с номером id всегда один и тот же,
+ * разные номера дают разные ключи.
+ */
+final class Keys {
+    /**
+     * Integer, идущие подряд (как id из базы)
+     */
+    static final String INTEGER = "Integer";
+    /**
+     * Случайные на вид строки из 16-20 символов
+     */
+    static final String STRING = "String";
+    /**
+     * Ключи с плохо распределенным hashCode: младшие 10 бит всегда нули
+     */
+    static final String BAD_HASH = "BadHash";
+    /**
+     * Строки с одинаковым hashCode (hash flooding): 20 блоков "Aa" или "BB"
+     * по битам id. Так можно получить 2^20 разных строк.
+     */
+    static final String COLLIDING = "Colliding";
+
+    private Keys() {
+    }
+
+    static Object[] generate(String keyType, long from, int count) {
+        Object[] keys = new Object[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = key(keyType, from + i);
+        }
+        return keys;
+    }
+
+    static Object key(String keyType, long id) {
+        switch (keyType) {
+            case INTEGER:
+                return (int) id;
+            case STRING:
+                /**
+                 * Умножение на нечетное число взаимно однозначно,
+                 * поэтому разные id дают разные строки
+                 */
+                return Long.toString(id * 0x9E3779B97F4A7C15L);
+            case BAD_HASH:
+                return new BadHashKey(id);
+            case COLLIDING:
+                StringBuilder sb = new StringBuilder();
+                for (int b = 0; b < 20; b++) sb.append((id >>> b & 1) == 0 ? "Aa" : "BB");
+                return sb.toString();
+            default:
+                throw new IllegalArgumentException("Unknown key type: " + keyType);
+        }
+    }
+
+    static final class BadHashKey {
+        final long id;
+
+        BadHashKey(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) id << 10;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof BadHashKey && ((BadHashKey) obj).id == id;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package bench;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Создание сравниваемых сетов.
+ *
+ * Классы из ../src лежат в пакете по умолчанию, а JMH не умеет работать
+ * с бенчмарками в пакете по умолчанию. Из именованного пакета такой класс
+ * напрямую не виден, поэтому HashSet создается через рефлексию и дальше
+ * используется через интерфейс Set - так же, как и java.util.HashSet.
+ */
+final class Sets {
+    /**
+     * Наш HashSet
+     */
+    static final String CUSTOM = "custom";
+    /**
+     * Наш HashSet, которому разрешен переход на SipHash
+     * (setKeyedHashFallback(Function.identity()))
+     */
+    static final String CUSTOM_KEYED = "custom-keyed";
+    /**
+     * Наш HashSet после заполнения превращается в FrozenHashSet (freeze()).
+     * Только для бенчмарков, которые после заполнения сет не меняют.
+     */
+    static final String CUSTOM_FROZEN = "custom-frozen";
+    /**
+     * ShardedHashSet из SHARDS шардов без блокировок
+     */
+    static final String CUSTOM_SHARDED = "custom-sharded";
+    /**
+     * java.util.HashSet
+     */
+    static final String JDK = "jdk";
+
+    private static final int SHARDS = 16;
+
+    private Sets() {
+    }
+
+    /**
+     * @param presized создать сет сразу под expectedSize элементов
+     */
+    @SuppressWarnings("unchecked")
+    static Set<Object> create(String impl, int expectedSize, boolean presized) {
+        if (JDK.equals(impl)) {
+            return presized
+                    ? new java.util.HashSet<>((int) (expectedSize / 0.75f) + 1)
+                    : new java.util.HashSet<>();
+        }
+        if (CUSTOM_SHARDED.equals(impl)) return createSharded(expectedSize, presized);
+        if (!CUSTOM.equals(impl) && !CUSTOM_KEYED.equals(impl) && !CUSTOM_FROZEN.equals(impl)) {
+            throw new IllegalArgumentException("Unknown impl: " + impl);
+        }
+        try {
+            Class<?> c = Class.forName("HashSet");
+            Constructor<?> constructor = presized ? c.getDeclaredConstructor(int.class) : c.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            Object set = presized ? constructor.newInstance(expectedSize) : constructor.newInstance();
+            if (CUSTOM_KEYED.equals(impl)) {
+                c.getMethod("setKeyedHashFallback", Function.class).invoke(set, Function.identity());
+            }
+            return (Set<Object>) set;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create HashSet", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Object> createSharded(int expectedSize, boolean presized) {
+        try {
+            Constructor<?> constructor = Class.forName("ShardedHashSet")
+                    .getDeclaredConstructor(int.class, boolean.class, long.class);
+            constructor.setAccessible(true);
+            return (Set<Object>) constructor.newInstance(SHARDS, false, presized ? (long) expectedSize : 0L);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create ShardedHashSet", e);
+        }
+    }
+
+    /**
+     * Вызывается после заполнения сета: для CUSTOM_FROZEN возвращает
+     * его неизменяемую копию, для остальных - сам сет
+     */
+    @SuppressWarnings("unchecked")
+    static Set<Object> filled(String impl, Set<Object> set) {
+        if (!CUSTOM_FROZEN.equals(impl)) return set;
+        try {
+            return (Set<Object>) set.getClass().getMethod("freeze").invoke(set);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot freeze HashSet", e);
+        }
+    }
+
+    /**
+     * HashSet.addBatch для сета, созданного через create
+     */
+    static long[] addBatch(Set<Object> set, Object[] keys, int off, int len) {
+        try {
+            Method method = set.getClass().getMethod("addBatch", Object[].class, int.class, int.class);
+            return (long[]) method.invoke(set, keys, off, len);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot call addBatch", e);
+        }
+    }
+}
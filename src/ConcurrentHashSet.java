@@ -0,0 +1,456 @@
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Потокобезопасный хэш-сет с той же открытой адресацией, что и HashSet.
+ *
+ * Чтение (contains, итератор) идет без блокировок: ячейки таблицы читаются
+ * как volatile через AtomicReferenceArray.
+ *
+ * Запись (add, remove) берет одну из STRIPES блокировок, выбранную по хэшу
+ * элемента. Поэтому один и тот же элемент не могут одновременно добавлять или
+ * удалять два потока, и дубликатов не бывает. Разные элементы могут бороться
+ * за одну и ту же свободную ячейку - ее занимаем через compareAndSet, и кто
+ * проиграл, тот ищет место заново.
+ *
+ * Увеличение таблицы (переезд) идет так: поток, заметивший переполнение,
+ * публикует объект Migration, после чего новые записи не начинаются. Дальше он
+ * по очереди берет и отпускает все блокировки - так он дожидается окончания
+ * записей, которые начались раньше. Теперь старая таблица неизменна, и ее
+ * можно копировать кусками (CHUNK ячеек). Пишущие потоки, которые пришли
+ * во время переезда, берут себе свободные куски и помогают. Читатели
+ * все это время читают полную старую таблицу, а после переезда - новую.
+ *
+ * Для записей переезд блокирующий: пока он идет, add, remove и clear ждут
+ * его конца (крутятся в Thread.yield()). Если поток, который взял кусок,
+ * вытеснен планировщиком, то до его возвращения стоят все записи. Забрать
+ * у него кусок нельзя: он может дописать в новую таблицу элемент уже после
+ * подмены таблицы и вернуть удаленный. Чтение не блокируется никогда.
+ */
+public class ConcurrentHashSet<T> implements Set<T> {
+    private static final double MAX_FULLNESS = 0.7;
+    private static final int INITIAL_SIZE = 128;
+    private static final int MAX_SIZE = 1 << 30;
+    private static final int STRIPES = 64;
+    /**
+     * Сколько ячеек старой таблицы копирует поток за один раз при переезде
+     */
+    private static final int CHUNK = 1024;
+    private static final Object DELETED = new Object();
+
+    private static final class Table {
+        final AtomicReferenceArray<Object> array;
+        final int mask;
+        /**
+         * Ячейки, в которых не null (живые и удаленные)
+         */
+        final AtomicInteger used = new AtomicInteger();
+        final AtomicInteger deleted = new AtomicInteger();
+
+        Table(int size) {
+            array = new AtomicReferenceArray<>(size);
+            mask = size - 1;
+        }
+    }
+
+    private static final class Migration {
+        final Table from;
+        final Table to;
+        final int chunks;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicInteger doneChunks = new AtomicInteger();
+        /**
+         * true, когда все записи в from закончились и можно копировать
+         */
+        volatile boolean writersStopped;
+
+        Migration(Table from, Table to) {
+            this.from = from;
+            this.to = to;
+            chunks = (from.array.length() + CHUNK - 1) / CHUNK;
+        }
+    }
+
+    private volatile Table table = new Table(INITIAL_SIZE);
+    private final AtomicReference<Migration> migration = new AtomicReference<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final AtomicInteger realSize = new AtomicInteger();
+
+    ConcurrentHashSet() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return realSize.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        return indexOf(table, o, hash(o.hashCode())) != -1;
+    }
+
+    private static int indexOf(Table tab, Object o, int hash) {
+        int index = hash & tab.mask;
+        for (int i = 0; i < tab.array.length(); i++) {
+            Object e = tab.array.get(index);
+            if (e == null) return -1;
+            if (e != DELETED && o.equals(e)) return index;
+            index = (index + 1) & tab.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Фибоначчиево перемешивание, как в HashSet (но без seed и без маски):
+     * от хэша берутся и индекс ячейки, и номер блокировки
+     */
+    private static int hash(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private ReentrantLock lockFor(int hash) {
+        return locks[(hash >>> 24) & (STRIPES - 1)];
+    }
+
+    @Override
+    public boolean add(T t) {
+        if (t == null) return false;
+        int hash = hash(t.hashCode());
+        ReentrantLock lock = lockFor(hash);
+        while (true) {
+            Migration m = migration.get();
+            if (m != null) {
+                help(m);
+                continue;
+            }
+            Table tab = table;
+            boolean full;
+            lock.lock();
+            try {
+                if (migration.get() != null || tab != table) continue;
+                if (whereToAdd(tab, t, hash) == -1) return false;
+                realSize.incrementAndGet();
+                full = (double) tab.used.get() / tab.array.length() > MAX_FULLNESS;
+            } finally {
+                lock.unlock();
+            }
+            if (full) startMigration(tab);
+            return true;
+        }
+    }
+
+    /**
+     * Вызывается под блокировкой элемента t. Возвращает индекс ячейки, куда
+     * положили t, или -1, если t уже есть или места нет совсем (таблица
+     * максимального размера заполнена).
+     */
+    private static int whereToAdd(Table tab, Object t, int hash) {
+        retry:
+        while (true) {
+            int index = hash & tab.mask;
+            int firstDeleted = -1;
+            for (int i = 0; i < tab.array.length(); i++) {
+                Object e = tab.array.get(index);
+                if (e == null) {
+                    if (firstDeleted != -1) {
+                        if (!tab.array.compareAndSet(firstDeleted, DELETED, t)) continue retry;
+                        tab.deleted.decrementAndGet();
+                        return firstDeleted;
+                    }
+                    if (!tab.array.compareAndSet(index, null, t)) continue retry;
+                    tab.used.incrementAndGet();
+                    return index;
+                }
+                if (e == DELETED) {
+                    if (firstDeleted == -1) firstDeleted = index;
+                } else if (t.equals(e)) {
+                    return -1;
+                }
+                index = (index + 1) & tab.mask;
+            }
+            if (firstDeleted == -1) return -1;
+            if (tab.array.compareAndSet(firstDeleted, DELETED, t)) {
+                tab.deleted.decrementAndGet();
+                return firstDeleted;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        int hash = hash(o.hashCode());
+        ReentrantLock lock = lockFor(hash);
+        while (true) {
+            Migration m = migration.get();
+            if (m != null) {
+                help(m);
+                continue;
+            }
+            Table tab = table;
+            lock.lock();
+            try {
+                if (migration.get() != null || tab != table) continue;
+                int index = indexOf(tab, o, hash);
+                if (index == -1) return false;
+                /**
+                 * Ячейку с o кроме нас никто не меняет: другие потоки
+                 * занимают только null и DELETED, а o защищен блокировкой
+                 */
+                tab.array.set(index, DELETED);
+                tab.deleted.incrementAndGet();
+                realSize.decrementAndGet();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Начинаем переезд из tab, если его еще никто не начал. Размер новой
+     * таблицы выбирается так же, как в HashSet.resize().
+     */
+    private void startMigration(Table tab) {
+        if (table != tab || migration.get() != null) return;
+        int newSize = tab.array.length();
+        if (tab.deleted.get() <= realSize.get()) {
+            if (newSize >= MAX_SIZE) return;
+            newSize *= 2;
+        }
+        Migration m = new Migration(tab, new Table(newSize));
+        if (!migration.compareAndSet(null, m)) return;
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+            lock.unlock();
+        }
+        if (table != tab) {
+            /**
+             * Пока мы ждали блокировки, таблицу заменил clear().
+             * Копировать еще никто не начинал, просто отменяем переезд.
+             */
+            migration.set(null);
+            return;
+        }
+        m.writersStopped = true;
+        help(m);
+    }
+
+    /**
+     * Берем свободные куски старой таблицы и копируем их, пока куски не
+     * кончатся. Кто скопировал последний кусок, тот и подменяет таблицу.
+     * Затем ждем, пока переезд не будет завершен: другие потоки еще могут
+     * копировать взятые куски, и это ожидание блокирующее.
+     */
+    private void help(Migration m) {
+        if (m.writersStopped) {
+            int chunk;
+            while ((chunk = m.nextChunk.getAndIncrement()) < m.chunks) {
+                copyChunk(m, chunk);
+                if (m.doneChunks.incrementAndGet() == m.chunks) {
+                    table = m.to;
+                    migration.set(null);
+                }
+            }
+        }
+        while (migration.get() == m) {
+            Thread.yield();
+        }
+    }
+
+    private static void copyChunk(Migration m, int chunk) {
+        int from = chunk * CHUNK;
+        int to = Math.min(from + CHUNK, m.from.array.length());
+        for (int i = from; i < to; i++) {
+            Object e = m.from.array.get(i);
+            if (e != null && e != DELETED) {
+                int index = hash(e.hashCode()) & m.to.mask;
+                while (!m.to.array.compareAndSet(index, null, e)) {
+                    index = (index + 1) & m.to.mask;
+                }
+                m.to.used.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Берем все блокировки, поэтому ни одна запись не идет. Если идет переезд,
+     * то сначала помогаем его закончить.
+     */
+    @Override
+    public void clear() {
+        while (true) {
+            Migration m = migration.get();
+            if (m != null) {
+                help(m);
+                continue;
+            }
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+            }
+            try {
+                if (migration.get() != null) continue;
+                table = new Table(INITIAL_SIZE);
+                realSize.set(0);
+                return;
+            } finally {
+                for (ReentrantLock lock : locks) {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Итератор идет по таблице, которая была текущей в момент его создания.
+     * Он не бросает ConcurrentModificationException: изменения, сделанные
+     * во время обхода, он может как увидеть, так и не увидеть.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new ConcurrentIterator(table);
+    }
+
+    private final class ConcurrentIterator implements Iterator<T> {
+        final Table tab;
+        int index = -1;
+        Object next;
+        Object current;
+
+        ConcurrentIterator(Table tab) {
+            this.tab = tab;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (++index < tab.array.length()) {
+                Object e = tab.array.get(index);
+                if (e != null && e != DELETED) {
+                    next = e;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (next == null) throw new NoSuchElementException();
+            current = next;
+            advance();
+            return (T) current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) throw new IllegalStateException();
+            ConcurrentHashSet.this.remove(current);
+            current = null;
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        List<Object> list = new ArrayList<>(size());
+        for (T t : this) {
+            list.add(t);
+        }
+        return list.toArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T1> T1[] toArray(T1[] a) {
+        List<Object> list = new ArrayList<>(size());
+        for (T t : this) {
+            list.add(t);
+        }
+        if (a.length < list.size()) {
+            a = (T1[]) Array.newInstance(a.getClass().getComponentType(), list.size());
+        }
+        for (int i = 0; i < list.size(); i++) {
+            a[i] = (T1) list.get(i);
+        }
+        if (a.length > list.size()) a[list.size()] = null;
+        return a;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        Objects.requireNonNull(c);
+        boolean result = false;
+        for (T t : c) {
+            if (add(t)) result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        boolean modified = false;
+        Iterator<T> iterator = iterator();
+        while (iterator.hasNext()) {
+            if (!c.contains(iterator.next())) {
+                iterator.remove();
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        boolean result = false;
+        for (Object t : c) {
+            if (remove(t)) result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Set)) return false;
+        Set<?> set = (Set<?>) obj;
+        return set.size() == size() && containsAll(set);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (T t : this) {
+            h += t.hashCode();
+        }
+        return h;
+    }
+}
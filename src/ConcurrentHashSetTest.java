@@ -0,0 +1,115 @@
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentHashSetTest extends HashSetTest {
+    static final int THREADS = 8;
+
+    @Override
+    protected <E> Set<E> newSet() {
+        return new ConcurrentHashSet<>();
+    }
+
+    /**
+     * Запускает task в THREADS потоках одновременно и ждет их окончания
+     */
+    static void runConcurrently(final ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    task.run(thread);
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    interface ThreadTask {
+        void run(int thread);
+    }
+
+    @Test
+    public void concurrentAddTest() throws Exception {
+        /**
+         * Каждый поток добавляет свои ключи, таблица при этом
+         * много раз растет. Ни один ключ не должен потеряться.
+         */
+        final Set<Integer> set = newSet();
+        final int perThread = 100000;
+        runConcurrently(new ThreadTask() {
+            @Override
+            public void run(int thread) {
+                for (int i = 0; i < perThread; i++) {
+                    assertTrue(set.add(thread * perThread + i));
+                }
+            }
+        });
+        assertEquals(THREADS * perThread, set.size());
+        for (int i = 0; i < THREADS * perThread; i++) {
+            assertTrue(set.contains(i));
+        }
+    }
+
+    @Test
+    public void concurrentSameKeysTest() throws Exception {
+        /**
+         * Все потоки добавляют одни и те же ключи: каждый ключ
+         * должен быть успешно добавлен ровно одним потоком
+         */
+        final Set<String> set = newSet();
+        final AtomicInteger added = new AtomicInteger();
+        final int keys = 50000;
+        runConcurrently(new ThreadTask() {
+            @Override
+            public void run(int thread) {
+                for (int i = 0; i < keys; i++) {
+                    if (set.add("key" + i)) added.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(keys, added.get());
+        assertEquals(keys, set.size());
+    }
+
+    @Test
+    public void concurrentChurnTest() throws Exception {
+        /**
+         * Половина потоков добавляет и удаляет свои временные ключи,
+         * остальные читают постоянные ключи, которые всегда должны быть видны
+         */
+        final Set<Integer> set = newSet();
+        final int permanent = 10000;
+        for (int i = 0; i < permanent; i++) set.add(-i - 1);
+        runConcurrently(new ThreadTask() {
+            @Override
+            public void run(int thread) {
+                Random random = new Random(thread);
+                for (int i = 0; i < 200000; i++) {
+                    if (thread % 2 == 0) {
+                        int key = thread * 1000000 + i;
+                        assertTrue(set.add(key));
+                        assertTrue(set.remove(key));
+                    } else {
+                        assertTrue(set.contains(-random.nextInt(permanent) - 1));
+                    }
+                }
+            }
+        });
+        assertEquals(permanent, set.size());
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Длины поиска в HashSet при атаке hash flooding, в том же виде,
+ * что и ProbeHistogram.
+ *
+ * 1. Integer, подобранные под хэш-функцию без seed (старую, h * C ^ h >>> 16):
+ *    без seed все они попали бы в ячейку 0, а с seed цепочки обычные.
+ * 2. Строки с одинаковым hashCode: seed не помогает, цепочка одна на
+ *    все строки. С разрешенным переходом на SipHash цепочки снова короткие.
+ */
+public class FloodProbeHistogram {
+    private static final int KEYS = 1 << 15;
+
+    public static void main(String[] args) {
+        HashSet<Integer> integers = new HashSet<>();
+        for (int k = 0; k < KEYS; k++) integers.add(againstUnseededHash(k));
+        ProbeHistogram.print("Integer против хэш-функции без seed, " + KEYS + " ключей",
+                integers.hitProbeLengths(), integers.missProbeLengths());
+
+        List<String> strings = collidingStrings(13);
+        HashSet<String> plain = new HashSet<>();
+        plain.addAll(strings);
+        ProbeHistogram.print("Строки с одинаковым hashCode, " + strings.size() + " ключей, без SipHash",
+                plain.hitProbeLengths(), plain.missProbeLengths());
+
+        strings = collidingStrings(15);
+        HashSet<String> keyed = new HashSet<>();
+        keyed.setKeyedHashFallback(Function.identity());
+        keyed.addAll(strings);
+        ProbeHistogram.print("Строки с одинаковым hashCode, " + strings.size() + " ключей, с SipHash",
+                keyed.hitProbeLengths(), keyed.missProbeLengths());
+    }
+
+    /**
+     * Для старой хэш-функции x = h * C, spread = x ^ (x >>> 16) подбираем h,
+     * у которого младшие 17 бит spread нулевые. Сдвиг на 16 в 32-битном
+     * числе обращается сам собой, а умножение обращается умножением
+     * на обратное к C по модулю 2^32.
+     */
+    private static int againstUnseededHash(int k) {
+        int spread = k << 17;
+        int x = spread ^ (spread >>> 16);
+        return x * inverse(0x9E3779B9);
+    }
+
+    /**
+     * Обратное к нечетному a по модулю 2^32 (метод Ньютона)
+     */
+    private static int inverse(int a) {
+        int x = a;
+        for (int i = 0; i < 5; i++) x *= 2 - a * x;
+        return x;
+    }
+
+    /**
+     * 2^bits разных строк с одинаковым hashCode: "Aa" и "BB" дают
+     * один и тот же hashCode, и любая их последовательность тоже
+     */
+    static List<String> collidingStrings(int bits) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < 1 << bits; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int b = 0; b < bits; b++) sb.append((i >>> b & 1) == 0 ? "Aa" : "BB");
+            result.add(sb.toString());
+        }
+        return result;
+    }
+}
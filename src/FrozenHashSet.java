@@ -0,0 +1,402 @@
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Неизменяемый хэш-сет для данных, которые собираются один раз и дальше
+ * только читаются. Получается из HashSet.freeze() или из любой коллекции.
+ *
+ * Ячейка элемента считается по почти минимальной совершенной хэш-функции
+ * (hash-and-displace, как в PTHash): все хэш-коды делятся на маленькие
+ * группы (bucket), и для каждой группы при построении подбирается число
+ * pilot, при котором ячейки всех ее хэш-кодов свободны. Поэтому:
+ * - у каждого хэш-кода своя ячейка, поиска по цепочке нет вообще:
+ *   contains - это pilot, одна ячейка, сравнение хэш-кода и один equals;
+ * - массив заполнен на 0.97 (HashSet - от 0.35 до 0.7) и нет удаленных
+ *   ячеек: около 9 байт на элемент вместе с pilots.
+ * Элементы с одинаковым hashCode() никакая функция от хэш-кода
+ * не разведет, поэтому они лежат в одной ячейке списком (Collided).
+ *
+ * Все поля final, поэтому сет можно передавать между потоками
+ * без синхронизации. Изменяющие методы бросают UnsupportedOperationException.
+ */
+public final class FrozenHashSet<T> implements Set<T> {
+    /**
+     * Доля занятых ячеек. Чем ближе к 1, тем дольше подбираются pilot
+     * для последних групп: свободных ячеек почти не остается.
+     */
+    private static final double FULLNESS = 0.97;
+    /**
+     * Средний размер группы. Больше - меньше pilots, но дольше построение.
+     */
+    private static final int BUCKET_SIZE = 4;
+    /**
+     * Если для какой-то группы pilot не нашелся за столько попыток,
+     * то строим все заново с другим seed и чуть большим массивом.
+     * На практике не случается.
+     */
+    private static final int MAX_PILOT = 1 << 16;
+    /**
+     * Сколько раз строим заново, прежде чем сдаться. С каждым разом массив
+     * растет на 1/32, так что последние попытки идут при заполненности
+     * около 0.6, когда pilot находится сразу.
+     */
+    private static final int MAX_ATTEMPTS = 16;
+    /**
+     * Элемент, или Collided, или null - пустая ячейка
+     */
+    private final Object[] array;
+    /**
+     * hashes[i] - hashCode() элемента в array[i]. Промах почти всегда
+     * отсекается сравнением хэш-кода, без обращения к самому элементу.
+     */
+    private final int[] hashes;
+    private final char[] pilots;
+    private final long seed;
+    private final int size;
+    /**
+     * Сумма хэш-кодов элементов, у неизменяемого сета ее можно посчитать один раз
+     */
+    private final int hashCode;
+    /**
+     * Как и в HashSet: свои hashCode и equals, null - методы самих элементов
+     */
+    private final HashSet.HashingStrategy<? super T> strategy;
+
+    /**
+     * Несколько разных элементов с одинаковым hashCode() в одной ячейке
+     */
+    private static final class Collided {
+        final Object[] elements;
+
+        Collided(Object[] elements) {
+            this.elements = elements;
+        }
+    }
+
+    FrozenHashSet(Collection<? extends T> c) {
+        this(c, null);
+    }
+
+    FrozenHashSet(Collection<? extends T> c, HashSet.HashingStrategy<? super T> strategy) {
+        this(c.toArray(), null, -1, false, strategy);
+    }
+
+    /**
+     * @param elements  элементы, null пропускаются
+     * @param hashCodes их hashCode() или null, если их надо посчитать
+     * @param count     сколько первых элементов брать, -1 - все
+     * @param distinct  true - если элементы заведомо разные (из другого сета),
+     *                  тогда equals при построении не нужен
+     * @param strategy  свои hashCode и equals или null
+     */
+    FrozenHashSet(Object[] elements, int[] hashCodes, int count, boolean distinct,
+                  HashSet.HashingStrategy<? super T> strategy) {
+        this.strategy = strategy;
+        int n = count == -1 ? elements.length : count;
+
+        /**
+         * Сортируем пары (хэш-код, номер) и собираем элементы с одинаковым
+         * хэш-кодом в одно значение: сам элемент или Collided
+         */
+        long[] pairs = new long[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (elements[i] == null) continue;
+            int h = hashCodes != null ? hashCodes[i] : hashCodeOf(elements[i]);
+            pairs[k++] = (long) h << 32 | i;
+        }
+        Arrays.sort(pairs, 0, k);
+        int[] keys = new int[k];
+        Object[] values = new Object[k];
+        int distinctKeys = 0;
+        int total = 0;
+        int sum = 0;
+        for (int start = 0, end; start < k; start = end) {
+            int h = (int) (pairs[start] >> 32);
+            end = start + 1;
+            while (end < k && (int) (pairs[end] >> 32) == h) end++;
+            Object[] group = new Object[end - start];
+            int groupSize = 0;
+            for (int j = start; j < end; j++) {
+                Object e = elements[(int) pairs[j]];
+                if (!distinct && indexOf(group, groupSize, e) != -1) continue;
+                group[groupSize++] = e;
+                sum += h;
+            }
+            keys[distinctKeys] = h;
+            values[distinctKeys++] = groupSize == 1 ? group[0] : new Collided(Arrays.copyOf(group, groupSize));
+            total += groupSize;
+        }
+        size = total;
+        hashCode = sum;
+
+        int capacity = Math.max(1, (int) Math.ceil(distinctKeys / FULLNESS));
+        pilots = new char[Math.max(1, (distinctKeys + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+        long s = ThreadLocalRandom.current().nextLong();
+        for (int attempt = 1; !findPilots(keys, distinctKeys, capacity, pilots, s); attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException("no perfect hash found for " + distinctKeys + " hash codes");
+            }
+            capacity += capacity / 32 + 1;
+            s = ThreadLocalRandom.current().nextLong();
+        }
+        seed = s;
+
+        array = new Object[capacity];
+        hashes = new int[capacity];
+        for (int i = 0; i < distinctKeys; i++) {
+            int slot = slot(keys[i]);
+            array[slot] = values[i];
+            hashes[slot] = keys[i];
+        }
+    }
+
+    private int indexOf(Object[] group, int groupSize, Object e) {
+        for (int i = 0; i < groupSize; i++) {
+            if (same(e, group[i])) return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int hashCodeOf(Object o) {
+        return strategy == null ? o.hashCode() : strategy.hashCode((T) o);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean same(Object o, Object e) {
+        return strategy == null ? o.equals(e) : strategy.equals((T) o, (T) e);
+    }
+
+    /**
+     * Подбираем pilot для каждой группы, начиная с самых больших, пока массив
+     * еще пустой. Для группы перебираем pilot = 0, 1, 2, ..., пока ячейки всех
+     * ее хэш-кодов не окажутся свободными и разными.
+     *
+     * @return false - если для какой-то группы pilot не нашелся
+     */
+    private static boolean findPilots(int[] keys, int count, int capacity, char[] pilots, long seed) {
+        int buckets = pilots.length;
+        long[] mixed = new long[count];
+        int[] bucketStart = new int[buckets + 1];
+        for (int i = 0; i < count; i++) {
+            mixed[i] = mix(keys[i] ^ seed);
+            bucketStart[bucket(mixed[i], buckets) + 1]++;
+        }
+        int maxBucket = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxBucket = Math.max(maxBucket, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        long[] byBucket = new long[count];
+        int[] fill = Arrays.copyOf(bucketStart, buckets);
+        for (int i = 0; i < count; i++) byBucket[fill[bucket(mixed[i], buckets)]++] = mixed[i];
+
+        /**
+         * Группы по убыванию размера (сортировка подсчетом)
+         */
+        int[] bySize = new int[maxBucket + 2];
+        for (int b = 0; b < buckets; b++) bySize[maxBucket - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+        for (int i = 0; i <= maxBucket; i++) bySize[i + 1] += bySize[i];
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) order[bySize[maxBucket - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+
+        boolean[] taken = new boolean[capacity];
+        int[] slots = new int[maxBucket];
+        for (int b : order) {
+            int from = bucketStart[b];
+            int length = bucketStart[b + 1] - from;
+            if (length == 0) break;
+            int pilot = 0;
+            while (!tryPilot(byBucket, from, length, pilot, capacity, taken, slots)) {
+                if (++pilot == MAX_PILOT) return false;
+            }
+            for (int j = 0; j < length; j++) taken[slots[j]] = true;
+            pilots[b] = (char) pilot;
+        }
+        return true;
+    }
+
+    private static boolean tryPilot(long[] byBucket, int from, int length, int pilot, int capacity,
+                                    boolean[] taken, int[] slots) {
+        for (int j = 0; j < length; j++) {
+            int slot = slot(byBucket[from + j], pilot, capacity);
+            if (taken[slot]) return false;
+            for (int i = 0; i < j; i++) {
+                if (slots[i] == slot) return false;
+            }
+            slots[j] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Перемешивание из MurmurHash3 (fmix64): каждый бит результата
+     * зависит от всех битов аргумента
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Старшие 32 бита, умноженные на n / 2^32: число от 0 до n - 1
+     * без деления с остатком
+     */
+    private static int reduce(long hash, int n) {
+        return (int) (((hash >>> 32) * n) >>> 32);
+    }
+
+    private static int bucket(long mixed, int buckets) {
+        return reduce(mixed, buckets);
+    }
+
+    private static int slot(long mixed, int pilot, int capacity) {
+        return reduce(mix(mixed ^ pilot * 0x9E3779B97F4A7C15L), capacity);
+    }
+
+    private int slot(int hashCode) {
+        long mixed = mix(hashCode ^ seed);
+        return slot(mixed, pilots[bucket(mixed, pilots.length)], array.length);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        int hashCode = hashCodeOf(o);
+        int slot = slot(hashCode);
+        if (hashes[slot] != hashCode) return false;
+        Object e = array[slot];
+        if (e instanceof Collided) {
+            Object[] elements = ((Collided) e).elements;
+            return indexOf(elements, elements.length, o) != -1;
+        }
+        return e != null && same(o, e);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    int capacity() {
+        return array.length;
+    }
+
+    /**
+     * Обходим массив, а ячейку с Collided - по ее списку
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            int index = -1;
+            Object[] collided;
+            int inCollided;
+            int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                remaining--;
+                if (collided != null && inCollided < collided.length) return (T) collided[inCollided++];
+                Object e;
+                do {
+                    e = array[++index];
+                } while (e == null);
+                if (e instanceof Collided) {
+                    collided = ((Collided) e).elements;
+                    inCollided = 1;
+                    return (T) collided[0];
+                }
+                return (T) e;
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toArray(new Object[size]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T1> T1[] toArray(T1[] a) {
+        if (a.length < size) {
+            a = (T1[]) Array.newInstance(a.getClass().getComponentType(), size);
+        }
+        int i = 0;
+        for (Object e : array) {
+            if (e instanceof Collided) {
+                for (Object c : ((Collided) e).elements) a[i++] = (T1) c;
+            } else if (e != null) {
+                a[i++] = (T1) e;
+            }
+        }
+        if (a.length > size) a[size] = null;
+        return a;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Set)) return false;
+        Set<?> set = (Set<?>) obj;
+        return set.size() == size() && containsAll(set);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FrozenHashSetTest {
+    @Test
+    public void freezeTest() {
+        HashSet<String> set = new HashSet<>();
+        for (int i = 0; i < 100000; i++) set.add("key" + i);
+        for (int i = 0; i < 100000; i += 3) set.remove("key" + i);
+        FrozenHashSet<String> frozen = set.freeze();
+        assertEquals(set.size(), frozen.size());
+        for (int i = 0; i < 200000; i++) assertEquals(set.contains("key" + i), frozen.contains("key" + i));
+        assertFalse(frozen.contains(null));
+        assertFalse(frozen.contains(42));
+        assertEquals(new java.util.HashSet<>(set), frozen);
+        assertEquals(new java.util.HashSet<>(set).hashCode(), frozen.hashCode());
+        assertTrue(frozen.capacity() < set.capacity());
+
+        set.add("new");
+        assertFalse(frozen.contains("new"));
+    }
+
+    @Test
+    public void fromCollectionTest() {
+        List<Integer> list = new ArrayList<>();
+        Random random = new Random(1720557871);
+        for (int i = 0; i < 50000; i++) list.add(random.nextInt(20000));
+        list.add(null);
+        FrozenHashSet<Integer> frozen = new FrozenHashSet<>(list);
+        Set<Integer> expected = new java.util.HashSet<>(list);
+        expected.remove(null);
+        assertEquals(expected, frozen);
+        assertEquals(expected.size(), frozen.toArray().length);
+        Integer[] a = frozen.toArray(new Integer[frozen.size() + 1]);
+        assertNull(a[frozen.size()]);
+        assertEquals(expected, new java.util.HashSet<>(Arrays.asList(a).subList(0, frozen.size())));
+        for (int i = -100; i < 20100; i++) assertEquals(expected.contains(i), frozen.contains(i));
+    }
+
+    @Test
+    public void smallTest() {
+        FrozenHashSet<String> empty = new FrozenHashSet<>(Collections.<String>emptyList());
+        assertTrue(empty.isEmpty());
+        assertFalse(empty.contains("a"));
+        assertFalse(empty.iterator().hasNext());
+        assertEquals(Collections.emptySet(), empty);
+
+        FrozenHashSet<String> one = new FrozenHashSet<>(Arrays.asList("a", "a"));
+        assertEquals(1, one.size());
+        assertTrue(one.contains("a"));
+        assertFalse(one.contains("b"));
+    }
+
+    @Test
+    public void collidingTest() {
+        List<String> keys = FloodProbeHistogram.collidingStrings(10);
+        FrozenHashSet<String> frozen = new FrozenHashSet<>(keys);
+        assertEquals(keys.size(), frozen.size());
+        for (String key : keys) assertTrue(frozen.contains(key));
+        assertFalse(frozen.contains("AaAa"));
+        assertFalse(frozen.contains("AaAaAaAaAaAaAaAaAaAb"));
+        assertEquals(new java.util.HashSet<>(keys), new java.util.HashSet<>(frozen));
+
+        List<String> mixed = new ArrayList<>(keys);
+        for (int i = 0; i < 1000; i++) mixed.add("key" + i);
+        mixed.addAll(keys);
+        frozen = new FrozenHashSet<>(mixed);
+        assertEquals(keys.size() + 1000, frozen.size());
+        assertEquals(new java.util.HashSet<>(mixed), frozen);
+        assertEquals(frozen.size(), frozen.toArray(new String[0]).length);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutableTest() {
+        new FrozenHashSet<>(Arrays.asList(1, 2, 3)).add(4);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutableIteratorTest() {
+        Iterator<Integer> iterator = new FrozenHashSet<>(Arrays.asList(1, 2, 3)).iterator();
+        iterator.next();
+        iterator.remove();
+    }
+}
@@ -1,369 +1,2479 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
-/**
- * Это класс-обертка для типов, которые
- * хранятся в хэш-сете.
- */
-class Entry<V> {
-    final V value;
+public class HashSet<T> implements Set<T> {
+    /**
+     * Максимально допустимая заполненность массива по умолчанию.
+     * Удаленные ячейки (DELETED) тоже считаются занятыми, так как
+     * поиск не останавливается на них, а идет дальше до null.
+     */
+    private static final double MAX_FULLNESS = 0.7;
+    /**
+     * Размер массива всегда степень 2. Тогда индекс ячейки можно
+     * получать маской (hash & mask) вместо деления с остатком.
+     */
+    private static final int INITIAL_SIZE = 128;
+    /**
+     * Наибольшая степень 2, которая помещается в int
+     */
+    private static final int MAX_SIZE = 1 << 30;
+    /**
+     * Наименьший размер массива для конструкторов с ожидаемым размером
+     */
+    private static final int MIN_SIZE = 2;
+    /**
+     * Маркер "удален". Это просто уникальный объект, который
+     * кладется в ячейку вместо удаленного элемента и сравнивается
+     * только по ссылке. Никакой элемент сета не может быть равен ему.
+     */
+    private static final Object DELETED = new Object();
+    /**
+     * Сколько ячеек старого массива переносится в новый за одну операцию
+     * при постепенном увеличении. Новый массив заполнится не раньше, чем
+     * через maxFullness / 2 * (его размер) добавлений, а ячеек в старом
+     * не больше, чем в новом, поэтому при обычной заполненности переезд
+     * успевает закончиться.
+     */
+    private static final int MIGRATION_STEP = 16;
+    /**
+     * Массовые операции (addAll, containsAll, retainAll, removeAll) делят
+     * массив на куски такого размера и обрабатывают их параллельно в общем
+     * ForkJoinPool. Если кусков меньше двух, то все делается в текущем потоке.
+     */
+    private static final int PARALLEL_CHUNK = 1 << 14;
+    /**
+     * Заголовок снимка (writeTo): "HSET" и версия формата
+     */
+    private static final int SNAPSHOT_MAGIC = 0x48534554;
+    private static final int SNAPSHOT_VERSION = 2;
+    /**
+     * Номер хэш-функции (spread). Если ее поменять, то номер надо увеличить,
+     * тогда старые снимки будут загружаться через обычное добавление,
+     * а не раскладкой по сохраненным ячейкам.
+     */
+    private static final int HASH_FUNCTION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Если add прошел больше стольких ячеек, то считаем, что хэш-коды
+     * подобраны специально (hash flooding), и защищаемся: меняем seed,
+     * а если не помогло - переходим на SipHash. При заполненности 0.7 и
+     * нормальных хэш-кодах такие цепочки почти не встречаются даже
+     * в сете на сотни миллионов элементов.
+     */
+    private static final int PROBE_LIMIT = 256;
+    /**
+     * Фильтр Блума перед contains: одно 64-битное слово на 8 ячеек массива,
+     * то есть около 11 бит на элемент при заполненности 0.7. Все биты
+     * элемента лежат в одном слове, поэтому проверка - одно чтение памяти.
+     */
+    private static final int BLOOM_SLOTS_PER_WORD = 8;
+    /**
+     * Запас ячеек ограниченного сета сверх limit: массив рассчитан на
+     * limit + limit / BOUNDED_SLACK элементов. Удаленные ячейки копятся,
+     * пока заполненность не превысит maxFullness, поэтому rehash на месте
+     * бывает не чаще, чем раз в limit / BOUNDED_SLACK вытеснений или удалений.
+     */
+    private static final int BOUNDED_SLACK = 4;
+    /**
+     * Снимок (snapshot()) делит массив с сетом, а перед первым изменением
+     * куска из SNAPSHOT_CHUNK ячеек сет копирует этот кусок в снимок
+     */
+    private static final int SNAPSHOT_CHUNK_BITS = 10;
+    private static final int SNAPSHOT_CHUNK = 1 << SNAPSHOT_CHUNK_BITS;
+    /**
+     * Элементы лежат прямо в массиве, без объекта-обертки.
+     * В ячейке либо null (пусто), либо DELETED, либо сам элемент.
+     */
+    private Object[] array;
+    /**
+     * Хэш-коды элементов, hashes[i] соответствует array[i].
+     * При поиске сначала сравниваем хэш-коды и только если они
+     * совпали, вызываем equals. При rehash хэш-коды заново не считаем.
+     */
+    private int[] hashes;
+    private int realSize;
+    /**
+     * Количество ячеек с маркером DELETED
+     */
+    private int deletedSize;
+    /**
+     * Всегда равно array.length - 1
+     */
+    private int mask;
+    /**
+     * Максимально допустимая заполненность для этого сета
+     */
+    private final double maxFullness;
+    /**
+     * Режим постепенного увеличения массива. В нем resize() не копирует
+     * все элементы сразу, а только заводит новый массив, а старый
+     * запоминает в oldArray. Дальше каждый вызов add, remove и contains
+     * переносит MIGRATION_STEP ячеек старого массива в новый, так что ни
+     * одна операция не ждет копирования всего сета. Пока переезд не
+     * закончен, элемент может лежать в любом из двух массивов.
+     */
+    private final boolean incrementalResize;
+    /**
+     * Старый массив во время переезда, в остальное время null.
+     * Перенесенные ячейки помечаются DELETED, чтобы не рвать цепочки
+     * для элементов, которые еще не перенесены.
+     */
+    private Object[] oldArray;
+    private int[] oldHashes;
+    private int oldMask;
+    /**
+     * Ячейки oldArray с индексом меньше migrated уже перенесены
+     */
+    private int migrated;
+    /**
+     * Счетчик изменений сета. Итератор запоминает его при создании и
+     * по нему замечает, что сет изменили во время обхода.
+     */
+    private int modCount;
+    /**
+     * Счетчики статистики, null - если статистика выключена.
+     * Тогда весь ее расход - одна проверка на null в add, remove и contains.
+     */
+    private Counters stats;
+    /**
+     * Случайное число, которое подмешивается в хэш-функцию. У каждого сета
+     * свое, поэтому нельзя заранее подобрать хэш-коды, которые попадут
+     * в одну ячейку.
+     */
+    private int seed = ThreadLocalRandom.current().nextInt();
+    /**
+     * Ключ элемента для SipHash (CharSequence или byte[]), null - если
+     * переход на SipHash не разрешен
+     */
+    private Function<? super T, ?> keyExtractor;
+    /**
+     * true - в hashes лежат не hashCode(), а SipHash от ключей элементов
+     */
+    private boolean keyed;
+    private long sipKey0;
+    private long sipKey1;
+    /**
+     * Значение modCount при последней защите, -1 - защиты еще не было
+     */
+    private int defenseModCount = -1;
+    /**
+     * Фильтр Блума по хэш-кодам элементов, null - если выключен.
+     * add ставит биты, remove их не снимает (у соседей по слову
+     * могут быть те же биты), поэтому после удалений фильтр пропускает
+     * больше лишнего. При каждом rehash фильтр строится заново.
+     */
+    private long[] bloom;
+    /**
+     * Свои hashCode и equals для элементов, null - берем методы самих
+     * элементов. Хэш-коды в hashes считаются тоже через него.
+     */
+    private final HashingStrategy<? super T> strategy;
+    /**
+     * Наибольшее число элементов ограниченного сета (bounded), 0 - сет
+     * не ограничен. Массив такого сета никогда не увеличивается, а add
+     * нового элемента в полный сет сначала вытесняет один из старых.
+     */
+    private final int limit;
+    /**
+     * Бит обращения на каждую ячейку для вытеснения CLOCK, только у
+     * ограниченного сета. add и contains ставят бит найденного элемента,
+     * а стрелка clockHand идет по массиву, снимает встреченные биты и
+     * вытесняет первый элемент без бита (второй шанс). rehash переносит биты
+     * вместе с элементами и не дает элементам перескочить вперед через
+     * стрелку (см. copyBounded).
+     */
+    private long[] referenced;
+    private int clockHand;
+    /**
+     * Последний снимок, который делит с сетом массивы array и hashes,
+     * null - таких нет. Перед записью в ячейку сет сохраняет ее кусок
+     * в этот снимок (beforeWrite), а когда массивы заменяются новыми
+     * (rehash), старые больше не меняются, и сохранять ничего не нужно.
+     */
+    private Snapshot<T> cow;
+    /**
+     * Общая блокировка сета и его снимков: сет берет ее на запись, пока
+     * сохраняет кусок, а снимки читают ячейки без блокировки и по ней
+     * проверяют, что кусок не сохраняли во время чтения
+     */
+    private StampedLock snapshotLock;
+
+    HashSet() {
+        this(false);
+    }
+
+    HashSet(boolean incrementalResize) {
+        this(INITIAL_SIZE, MAX_FULLNESS, incrementalResize, null, 0);
+    }
+
+    /**
+     * Сет, в котором элементы сравниваются через strategy: например,
+     * byte[] по содержимому (HashingStrategy.BYTE_ARRAY)
+     */
+    HashSet(HashingStrategy<? super T> strategy) {
+        this(INITIAL_SIZE, MAX_FULLNESS, false, Objects.requireNonNull(strategy), 0);
+    }
+
+    HashSet(int expectedSize, HashingStrategy<? super T> strategy) {
+        this(tableSizeFor(expectedSize, MAX_FULLNESS), MAX_FULLNESS, false, Objects.requireNonNull(strategy), 0);
+    }
+
+    /**
+     * Сет, в который можно добавить expectedSize элементов
+     * без единого увеличения массива
+     */
+    HashSet(int expectedSize) {
+        this(expectedSize, MAX_FULLNESS);
+    }
+
+    HashSet(int expectedSize, double maxFullness) {
+        this(tableSizeFor(expectedSize, maxFullness), maxFullness, false, null, 0);
+    }
+
+    /**
+     * Массив сразу нужного размера, затем добавляем все элементы c
+     */
+    HashSet(Collection<? extends T> c) {
+        this(c.size());
+        addAll(c);
+    }
+
+    private HashSet(int arraySize, double maxFullness, boolean incrementalResize,
+                    HashingStrategy<? super T> strategy, int limit) {
+        this.maxFullness = maxFullness;
+        this.incrementalResize = incrementalResize;
+        this.strategy = strategy;
+        this.limit = limit;
+        array = new Object[arraySize];
+        hashes = new int[arraySize];
+        mask = arraySize - 1;
+        if (limit > 0) referenced = new long[referencedSizeFor(arraySize)];
+    }
+
+    /**
+     * Ограниченный сет: не больше limit элементов, массив выделяется сразу
+     * и дальше не меняется. Добавление нового элемента в полный сет вытесняет
+     * элемент, к которому дольше всего не обращались (приближенно, CLOCK),
+     * так что память не растет, а недавние элементы остаются. Вытеснение
+     * ставит в ячейку DELETED, как и remove.
+     */
+    public static <E> HashSet<E> bounded(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be positive: " + limit);
+        long withSlack = limit + (long) limit / BOUNDED_SLACK;
+        if (withSlack > (long) (MAX_SIZE * MAX_FULLNESS)) {
+            throw new IllegalArgumentException("limit is too large: " + limit);
+        }
+        return new HashSet<>(tableSizeFor((int) withSlack, MAX_FULLNESS), MAX_FULLNESS, false, null, limit);
+    }
+
+    /**
+     * Наибольшее число элементов, 0 - если сет не ограничен
+     */
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * Наименьший размер массива (степень 2), при котором expectedSize
+     * элементов не превышают заполненность maxFullness
+     */
+    private static int tableSizeFor(int expectedSize, double maxFullness) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+        }
+        if (!(maxFullness > 0 && maxFullness < 1)) {
+            throw new IllegalArgumentException("maxFullness must be in (0, 1): " + maxFullness);
+        }
+        double needed = Math.ceil(expectedSize / maxFullness);
+        int size = MIN_SIZE;
+        while (size < MAX_SIZE && (size < needed || size <= expectedSize)) size *= 2;
+        return size;
+    }
+
+    /**
+     * Увеличиваем массив, если в него не помещается minSize элементов.
+     * Копирование при этом идет сразу, даже в режиме incrementalResize.
+     * У ограниченного сета массив не меняется.
+     */
+    public void ensureCapacity(int minSize) {
+        int newSize = tableSizeFor(minSize, maxFullness);
+        if (newSize > array.length && limit == 0) {
+            finishMigration();
+            rehash(newSize);
+        }
+    }
+
+    /**
+     * Уменьшаем массив до наименьшего размера, в который помещаются текущие
+     * элементы. Заодно исчезают все удаленные ячейки.
+     */
+    public void trimToSize() {
+        finishMigration();
+        int newSize = limit > 0 ? array.length : tableSizeFor(realSize, maxFullness);
+        if (newSize < array.length || deletedSize > 0) rehash(Math.min(newSize, array.length));
+    }
+
+    /**
+     * Неизменяемая копия сета для данных, которые дальше только читаются.
+     * Ячейки считаются по совершенной хэш-функции (PTHash): массив заполнен
+     * на 0.97, а contains смотрит ровно одну ячейку. Сам сет остается
+     * изменяемым, последующие изменения в копию не попадают.
+     * Хэш-коды берутся готовые из hashes, если сет не перешел на SipHash.
+     */
+    public FrozenHashSet<T> freeze() {
+        finishMigration();
+        Object[] elements = new Object[realSize];
+        int[] hashCodes = keyed ? null : new int[realSize];
+        int k = 0;
+        for (int i = 0; i < array.length; i++) {
+            Object e = array[i];
+            if (e == null || e == DELETED) continue;
+            elements[k] = e;
+            if (hashCodes != null) hashCodes[k] = hashes[i];
+            k++;
+        }
+        return new FrozenHashSet<>(elements, hashCodes, k, true, strategy);
+    }
+
+    /**
+     * Снимок сета: неизменяемое представление с элементами на момент
+     * вызова. Элементы не копируются - снимок делит массивы с сетом, а сет
+     * перед первым изменением каждого куска из SNAPSHOT_CHUNK ячеек
+     * копирует этот кусок в снимок. Так что снимок стоит одного массива
+     * ссылок на куски (по одной на SNAPSHOT_CHUNK ячеек), а каждое
+     * следующее изменение - копии не больше одного куска. После увеличения
+     * массива сет пишет уже в новый, и копировать больше ничего не нужно.
+     * Если сет не менялся с прошлого снимка, то возвращается он же.
+     *
+     * Сам сет по-прежнему не потокобезопасен, а снимок можно читать из
+     * любого числа потоков без блокировок, в том числе пока сет меняют:
+     * чтение ячейки проверяется по StampedLock (tryOptimisticRead/validate),
+     * и блокировку на чтение берет, только если в этот момент сет
+     * сохранял кусок. Снимок надо передавать другим потокам так же,
+     * как любой объект (например, через volatile поле).
+     * Незаконченный переезд (incrementalResize) сначала доводим до конца,
+     * а следующий переезд при живом снимке начинается с копии массива.
+     */
+    public Set<T> snapshot() {
+        finishMigration();
+        if (cow != null && cow.modCount == modCount) return cow;
+        if (snapshotLock == null) snapshotLock = new StampedLock();
+        Snapshot<T> snapshot = new Snapshot<>(this);
+        /**
+         * Куски, которые сет не менял с прошлого снимка, у обоих снимков
+         * одинаковые, поэтому старый снимок ищет их в новом
+         */
+        if (cow != null) cow.next = snapshot;
+        cow = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Вызывается перед записью в ячейку index массивов array и hashes
+     */
+    private void beforeWrite(int index) {
+        if (cow != null) cow.save(index >>> SNAPSHOT_CHUNK_BITS);
+    }
+
+    /**
+     * Перед изменением всего массива сразу (переезд, пересчет хэш-кодов)
+     * сет переходит на свою копию массивов, а прежние остаются снимкам
+     */
+    private void detach() {
+        if (cow == null) return;
+        array = array.clone();
+        hashes = hashes.clone();
+        cow = null;
+    }
+
+    /**
+     * Кусок массивов на момент снимка, который сет сохранил перед изменением
+     */
+    private static final class Chunk {
+        final Object[] elements;
+        final int[] hashes;
+
+        Chunk(Object[] elements, int[] hashes) {
+            this.elements = elements;
+            this.hashes = hashes;
+        }
+    }
+
+    /**
+     * Ячейка снимка берется из сохраненного куска, если он есть у этого
+     * снимка или у более новых (next), иначе из общего массива. Сет сохраняет
+     * кусок под блокировкой на запись и меняет ячейку только после этого,
+     * поэтому чтение из общего массива, после которого validate прошел,
+     * видело значение на момент снимка. Поля сета на момент снимка (seed,
+     * ключи SipHash) скопированы, так как сет потом может их поменять.
+     */
+    private static final class Snapshot<E> extends AbstractSet<E> {
+        final Object[] array;
+        final int[] hashes;
+        final int mask;
+        final int size;
+        final int modCount;
+        final int seed;
+        final boolean keyed;
+        final Function<? super E, ?> keyExtractor;
+        final long sipKey0;
+        final long sipKey1;
+        final HashingStrategy<? super E> strategy;
+        final StampedLock lock;
+        final Chunk[] saved;
+        /**
+         * Следующий снимок того же массива, null - этот самый новый
+         */
+        volatile Snapshot<E> next;
+
+        Snapshot(HashSet<E> set) {
+            array = set.array;
+            hashes = set.hashes;
+            mask = set.mask;
+            size = set.realSize;
+            modCount = set.modCount;
+            seed = set.seed;
+            keyed = set.keyed;
+            keyExtractor = set.keyExtractor;
+            sipKey0 = set.sipKey0;
+            sipKey1 = set.sipKey1;
+            strategy = set.strategy;
+            lock = set.snapshotLock;
+            saved = new Chunk[(array.length + SNAPSHOT_CHUNK - 1) >>> SNAPSHOT_CHUNK_BITS];
+        }
+
+        /**
+         * Вызывается сетом перед первым изменением куска c
+         */
+        void save(int c) {
+            if (saved[c] != null) return;
+            int from = c << SNAPSHOT_CHUNK_BITS;
+            int to = Math.min(from + SNAPSHOT_CHUNK, array.length);
+            long stamp = lock.writeLock();
+            try {
+                saved[c] = new Chunk(Arrays.copyOfRange(array, from, to), Arrays.copyOfRange(hashes, from, to));
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private Chunk savedChunk(int c) {
+            for (Snapshot<E> s = this; s != null; s = s.next) {
+                Chunk chunk = s.saved[c];
+                if (chunk != null) return chunk;
+            }
+            return null;
+        }
+
+        private Object elementAt(int index) {
+            int c = index >>> SNAPSHOT_CHUNK_BITS;
+            long stamp = lock.tryOptimisticRead();
+            Chunk chunk = savedChunk(c);
+            if (chunk != null) return chunk.elements[index & (SNAPSHOT_CHUNK - 1)];
+            Object e = array[index];
+            if (lock.validate(stamp)) return e;
+            stamp = lock.readLock();
+            try {
+                chunk = savedChunk(c);
+                return chunk != null ? chunk.elements[index & (SNAPSHOT_CHUNK - 1)] : array[index];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private int hashAt(int index) {
+            int c = index >>> SNAPSHOT_CHUNK_BITS;
+            long stamp = lock.tryOptimisticRead();
+            Chunk chunk = savedChunk(c);
+            if (chunk != null) return chunk.hashes[index & (SNAPSHOT_CHUNK - 1)];
+            int h = hashes[index];
+            if (lock.validate(stamp)) return h;
+            stamp = lock.readLock();
+            try {
+                chunk = savedChunk(c);
+                return chunk != null ? chunk.hashes[index & (SNAPSHOT_CHUNK - 1)] : hashes[index];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private int hashCodeOf(Object o) {
+            return keyed ? keyedHashCode(o, keyExtractor, sipKey0, sipKey1, strategy) : plainHashCode(o, strategy);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Тот же поиск, что и find: элемент и хэш-код каждой ячейки
+         * читаются отдельно, но оба - на момент снимка
+         */
+        @Override
+        public boolean contains(Object o) {
+            if (o == null) return false;
+            int hashCode = hashCodeOf(o);
+            int index = spread(hashCode, seed) & mask;
+            for (int i = 0; i < array.length; i++) {
+                Object e = elementAt(index);
+                if (e == null) return false;
+                if (e != DELETED && hashAt(index) == hashCode && same(o, e, strategy)) return true;
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                int index = -1;
+                Object next = advance();
+
+                private Object advance() {
+                    while (++index < array.length) {
+                        Object e = elementAt(index);
+                        if (e != null && e != DELETED) return e;
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public E next() {
+                    if (next == null) throw new NoSuchElementException();
+                    Object e = next;
+                    next = advance();
+                    return (E) e;
+                }
+            };
+        }
+
+        /**
+         * Как HashSet.hashCode: с strategy сумма ее хэш-кодов
+         */
+        @Override
+        public int hashCode() {
+            int h = 0;
+            for (E e : this) h += plainHashCode(e, strategy);
+            return h;
+        }
+    }
+
+    /**
+     * Текущий размер массива, для тестов
+     */
+    int capacity() {
+        return array.length;
+    }
+
+    @Override
+    public int size() {
+        return realSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return realSize == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        migrate();
+        int hashCode = hashCodeOf(o);
+        if (bloom != null && !bloomMayContain(hashCode)) {
+            if (stats != null) stats.bloomNegatives++;
+            return false;
+        }
+        long found = find(o, hashCode);
+        if (stats != null) stats.contains = Counters.record(stats.contains, found);
+        if (referenced != null && (int) found != -1) reference((int) found);
+        boolean result = (int) found != -1 || (oldArray != null && indexOfOld(o, hashCode) != -1);
+        if (bloom != null && stats != null && !result) stats.bloomFalsePositives++;
+        return result;
+    }
+
+    /**
+     * Итератор (а через него equals и hashCode) обходит один массив,
+     * поэтому незаконченный переезд сначала доводим до конца.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        finishMigration();
+        return new HashIterator();
+    }
+
+    /**
+     * next - индекс ячейки со следующим элементом (или array.length, если
+     * элементов больше нет), current - индекс ячейки последнего отданного.
+     * remove() ставит DELETED прямо в ячейку current, без повторного поиска.
+     * Если сет изменили не через этот итератор, то бросаем
+     * ConcurrentModificationException (сравниваем modCount).
+     */
+    private final class HashIterator implements Iterator<T> {
+        int next = nextElement(0);
+        int current = -1;
+        int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < array.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            current = next;
+            next = nextElement(next + 1);
+            return (T) array[current];
+        }
+
+        @Override
+        public void remove() {
+            if (current == -1) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            beforeWrite(current);
+            array[current] = DELETED;
+            realSize--;
+            deletedSize++;
+            expectedModCount = ++modCount;
+            current = -1;
+        }
+    }
+
+    /**
+     * Индекс первой занятой ячейки, начиная с from, или array.length
+     */
+    private int nextElement(int from) {
+        while (from < array.length && (array[from] == null || array[from] == DELETED)) from++;
+        return from;
+    }
+
+    /**
+     * Spliterator делит массив на части по индексам, поэтому
+     * stream() и parallelStream() обходят сет без итератора.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        finishMigration();
+        return new HashSpliterator(array, 0, array.length, realSize, true);
+    }
+
+    /**
+     * Обходит ячейки массива с индексами [index, fence). trySplit отдает
+     * первую половину диапазона новому Spliterator, а себе оставляет вторую.
+     * Точный размер известен только до первого деления (SIZED), после
+     * него estimateSize - это оценка: половина от оценки родителя.
+     */
+    private final class HashSpliterator implements Spliterator<T> {
+        final Object[] a;
+        int index;
+        final int fence;
+        long estimate;
+        boolean sized;
+        final int expectedModCount = modCount;
+
+        HashSpliterator(Object[] a, int index, int fence, long estimate, boolean sized) {
+            this.a = a;
+            this.index = index;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.sized = sized;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            while (index < fence) {
+                Object e = a[index++];
+                if (e != null && e != DELETED) {
+                    action.accept((T) e);
+                    if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            Object[] a = this.a;
+            for (int i = index; i < fence; i++) {
+                Object e = a[i];
+                if (e != null && e != DELETED) action.accept((T) e);
+            }
+            index = fence;
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int middle = (index + fence) >>> 1;
+            if (middle <= index) return null;
+            estimate >>>= 1;
+            sized = false;
+            HashSpliterator prefix = new HashSpliterator(a, index, middle, estimate, false);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return (sized ? SIZED : 0) | DISTINCT | NONNULL;
+        }
+    }
+
+    /**
+     * toArray, forEach, removeIf и drainTo идут по массиву простым циклом
+     * по индексам, без итератора. Незаконченный переезд, как и в iterator(),
+     * сначала доводим до конца.
+     */
+    @Override
+    public Object[] toArray() {
+        return toArray(new Object[realSize]);
+    }
+
+    /**
+     * Если a вмещает все элементы, то пишем прямо в него, без создания
+     * нового массива, а в ячейку сразу после последнего элемента ставим null.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T1> T1[] toArray(T1[] a) {
+        finishMigration();
+        if (a.length < realSize) {
+            a = (T1[]) Array.newInstance(a.getClass().getComponentType(), realSize);
+        }
+        Object[] from = array;
+        int k = 0;
+        for (int i = 0; i < from.length; i++) {
+            Object e = from[i];
+            if (e != null && e != DELETED) a[k++] = (T1) e;
+        }
+        if (a.length > k) a[k] = null;
+        return a;
+    }
+
+    /**
+     * Если action изменил сет, то после обхода бросаем
+     * ConcurrentModificationException, как и итератор
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        finishMigration();
+        Object[] a = array;
+        int expectedModCount = modCount;
+        for (int i = 0; i < a.length; i++) {
+            Object e = a[i];
+            if (e != null && e != DELETED) action.accept((T) e);
+        }
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Удаляет так же, как iterator().remove(): ставит DELETED прямо в ячейку
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+        finishMigration();
+        Object[] a = array;
+        int expectedModCount = modCount;
+        int removed = 0;
+        for (int i = 0; i < a.length; i++) {
+            Object e = a[i];
+            if (e != null && e != DELETED && filter.test((T) e)) {
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                beforeWrite(i);
+                a[i] = DELETED;
+                realSize--;
+                deletedSize++;
+                removed++;
+            }
+        }
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        if (removed == 0) return false;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Переносит все элементы в c и очищает сет, возвращает их количество.
+     * Если c.add бросил исключение, то сет не меняется, а в c остается
+     * часть элементов.
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super T> c) {
+        Objects.requireNonNull(c);
+        if (c == this) throw new IllegalArgumentException("Cannot drain a set into itself");
+        finishMigration();
+        Object[] a = array;
+        int expectedModCount = modCount;
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            Object e = a[i];
+            if (e != null && e != DELETED) {
+                c.add((T) e);
+                count++;
+            }
+        }
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        if (count > 0) clear();
+        return count;
+    }
+
+    /**
+     * Один проход по цепочке: findSlot либо находит такой же элемент
+     * (тогда не добавляем), либо возвращает первую свободную или удаленную
+     * ячейку. Если занимаем удаленную ячейку, то заполненность не меняется.
+     * Если занимаем пустую и заполненность (вместе с удаленными) превысит
+     * maxFullness, то сначала вызываем resize() и ищем место уже в новом
+     * массиве. Если resize() не удался, то возвращаем false.
+     * В полном ограниченном сете перед добавлением вытесняем один элемент.
+     */
+    @Override
+    public boolean add(T t) {
+        if (t == null) return false;
+        return add(t, hashCodeOf(t));
+    }
+
+    /**
+     * add с уже посчитанным хэш-кодом, для массовых операций
+     */
+    private boolean add(T t, int hashCode) {
+        migrate();
+        if (oldArray != null && indexOfOld(t, hashCode) != -1) return false;
+        long found = findSlot(t, hashCode);
+        if (stats != null) stats.add = Counters.record(stats.add, found);
+        int probes = (int) (found >>> 32);
+        int whereAdd = (int) found;
+        if (whereAdd == -1) {
+            if (referenced != null) reference(indexOf(t, hashCode));
+            return false;
+        }
+        if (limit > 0 && realSize == limit) evict();
+        if (array[whereAdd] == DELETED) {
+            deletedSize--;
+        } else if ((double) (realSize + deletedSize + 1) / array.length > maxFullness) {
+            if (!resize()) return false;
+            whereAdd = freeSlot(hashCode);
+        }
+        beforeWrite(whereAdd);
+        array[whereAdd] = t;
+        hashes[whereAdd] = hashCode;
+        if (bloom != null) bloomAdd(hashCode);
+        if (referenced != null) reference(whereAdd);
+        realSize++;
+        modCount++;
+        if (probes > PROBE_LIMIT) defend(t);
+        return true;
+    }
+
+    /**
+     * Ставит бит обращения ячейки index (или ничего, если index = -1)
+     */
+    private void reference(int index) {
+        if (index != -1) referenced[index >>> 6] |= 1L << index;
+    }
+
+    private static int referencedSizeFor(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    /**
+     * Один шаг CLOCK: двигаем стрелку по ячейкам, у встреченных элементов
+     * с битом обращения снимаем бит, а первый элемент без бита удаляем.
+     * Не больше двух оборотов: после первого биты сняты у всех.
+     */
+    private void evict() {
+        Object[] a = array;
+        long[] bits = referenced;
+        while (true) {
+            int i = clockHand;
+            clockHand = (i + 1) & mask;
+            Object e = a[i];
+            if (e == null || e == DELETED) continue;
+            long bit = 1L << i;
+            if ((bits[i >>> 6] & bit) != 0) {
+                bits[i >>> 6] &= ~bit;
+                continue;
+            }
+            beforeWrite(i);
+            a[i] = DELETED;
+            deletedSize++;
+            realSize--;
+            if (stats != null) stats.evictions++;
+            return;
+        }
+    }
+
+    /**
+     * Защита от hash flooding. Сначала раскладываем сет заново с новым seed:
+     * это помогает, если хэш-коды подобраны под конкретную хэш-функцию.
+     * Если и после этого цепочка для t длинная, то у многих элементов
+     * просто одинаковый hashCode(), и seed тут не поможет - тогда, если
+     * задан keyExtractor, переходим на SipHash от ключей.
+     * Каждая защита - это rehash всего сета, поэтому следующая разрешена
+     * не раньше, чем через realSize / 2 изменений: в среднем на одно
+     * изменение приходится O(1) работы.
+     */
+    private void defend(T t) {
+        if (defenseModCount != -1 && modCount - defenseModCount < realSize / 2) return;
+        finishMigration();
+        seed = ThreadLocalRandom.current().nextInt();
+        rehash(array.length, true);
+        if (keyExtractor != null && !keyed && (int) (find(t, hashCodeOf(t)) >>> 32) > PROBE_LIMIT) {
+            keyed = true;
+            sipKey0 = ThreadLocalRandom.current().nextLong();
+            sipKey1 = ThreadLocalRandom.current().nextLong();
+            recomputeHashes();
+        }
+        defenseModCount = modCount;
+    }
+
+    /**
+     * Разрешает переход на SipHash при атаке. keyExtractor возвращает для
+     * элемента CharSequence или byte[], равные элементы должны давать равные
+     * ключи. Для сета строк подойдет Function.identity(). null запрещает
+     * переход, а если сет уже на SipHash, то возвращает его на hashCode().
+     */
+    public void setKeyedHashFallback(Function<? super T, ?> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        if (keyed) {
+            keyed = keyExtractor != null;
+            recomputeHashes();
+        }
+    }
+
+    /**
+     * true - если сет перешел на SipHash, для тестов
+     */
+    boolean isKeyedHash() {
+        return keyed;
+    }
+
+    /**
+     * Заново считаем хэш-коды всех элементов (после смены hashCodeOf)
+     * и раскладываем их по ним
+     */
+    private void recomputeHashes() {
+        finishMigration();
+        detach();
+        for (int i = 0; i < array.length; i++) {
+            Object e = array[i];
+            if (e != null && e != DELETED) hashes[i] = hashCodeOf(e);
+        }
+        rehash(array.length, true);
+    }
+
+    /**
+     * Хэш-код, который хранится в hashes: обычно hashCode() (или
+     * strategy.hashCode), а после перехода на SipHash - SipHash от ключа
+     * элемента. Если ключ не CharSequence и не byte[] или keyExtractor
+     * не подходит для объекта (ищут объект другого типа), то берем
+     * hashCode(): у равных объектов равные ключи, так что выбор ветки
+     * для них всегда одинаковый.
+     */
+    private int hashCodeOf(Object o) {
+        return keyed ? keyedHashCode(o, keyExtractor, sipKey0, sipKey1, strategy) : plainHashCode(o);
+    }
+
+    /**
+     * hashCodeOf после перехода на SipHash. Статический, потому что
+     * снимок считает хэш-коды с ключами на момент своего создания.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> int keyedHashCode(Object o, Function<? super E, ?> keyExtractor, long sipKey0, long sipKey1,
+                                         HashingStrategy<? super E> strategy) {
+        Object key;
+        try {
+            key = keyExtractor.apply((E) o);
+        } catch (ClassCastException e) {
+            return plainHashCode(o, strategy);
+        }
+        long h;
+        if (key instanceof CharSequence) {
+            h = SipHash.hash(sipKey0, sipKey1, (CharSequence) key);
+        } else if (key instanceof byte[]) {
+            h = SipHash.hash(sipKey0, sipKey1, (byte[]) key);
+        } else {
+            return plainHashCode(o, strategy);
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int plainHashCode(Object o) {
+        return plainHashCode(o, strategy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> int plainHashCode(Object o, HashingStrategy<? super E> strategy) {
+        return strategy == null ? o.hashCode() : strategy.hashCode((E) o);
+    }
+
+    /**
+     * Равен ли искомый o элементу e из массива
+     */
+    private boolean same(Object o, Object e) {
+        return same(o, e, strategy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> boolean same(Object o, Object e, HashingStrategy<? super E> strategy) {
+        return strategy == null ? o.equals(e) : strategy.equals((E) o, (E) e);
+    }
+
+    /**
+     * Можно ли искать элементы other у нас по хэш-кодам из other.hashes.
+     * При разных strategy у сетов и хэш-коды, и равенство разные.
+     */
+    private boolean sameHashCodes(HashSet<?> other) {
+        return !keyed && !other.keyed && strategy == other.strategy;
+    }
+
+    /**
+     * Если массив забит в основном удаленными ячейками (их больше, чем живых
+     * элементов), то размер не меняем, а просто раскладываем элементы заново -
+     * при rehash удаленные ячейки исчезают. Иначе увеличиваем массив в 2 раза.
+     * Так как размер всегда степень 2, то больше MAX_SIZE (2^30) вырасти
+     * нельзя, тогда возвращаем false.
+     * В режиме incrementalResize вместо rehash начинаем переезд.
+     * Ограниченный сет всегда раскладывается заново в массив того же размера.
+     */
+    private boolean resize() {
+        int newSize = array.length;
+        if (deletedSize <= realSize && limit == 0) {
+            if (newSize >= MAX_SIZE) return false;
+            newSize *= 2;
+        }
+        if (stats != null) stats.resizes++;
+        if (incrementalResize) {
+            startMigration(newSize);
+        } else {
+            rehash(newSize);
+        }
+        return true;
+    }
+
+    /**
+     * Здесь заново считаем хэш-функцию, чтобы распределить элементы с учетом
+     * нового размера. Идет следующий порядок вызовов -
+     * rehash() -> copyFromTo() -> freeSlot() -> hash()
+     * Хэш-функция в самом конце этого списка. Сами хэш-коды
+     * элементов берутся из массива hashes, hashCode() не вызывается.
+     */
+    private void rehash(int newSize) {
+        rehash(newSize, false);
+    }
+
+    /**
+     * reseeded - хэши элементов поменялись (новый seed или SipHash),
+     * и элементы раскладываются по массиву в другом порядке
+     */
+    private void rehash(int newSize, boolean reseeded) {
+        long start = stats != null ? System.nanoTime() : 0;
+        Object[] from = array;
+        int[] fromHashes = hashes;
+        long[] fromReferenced = referenced;
+        array = new Object[newSize];
+        hashes = new int[newSize];
+        mask = newSize - 1;
+        deletedSize = 0;
+        modCount++;
+        if (bloom != null) bloom = new long[bloomSizeFor(newSize)];
+        cow = null;
+        if (fromReferenced == null) {
+            copyFromTo(from, fromHashes, 0);
+        } else {
+            referenced = new long[referencedSizeFor(newSize)];
+            copyBounded(from, fromHashes, fromReferenced, reseeded);
+        }
+        if (stats != null) stats.rehashNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Заводим новый массив, а текущий становится старым. Если предыдущий
+     * переезд почему-то не закончился, то сначала заканчиваем его.
+     */
+    private void startMigration(int newSize) {
+        finishMigration();
+        detach();
+        oldArray = array;
+        oldHashes = hashes;
+        oldMask = mask;
+        migrated = 0;
+        modCount++;
+        array = new Object[newSize];
+        hashes = new int[newSize];
+        mask = newSize - 1;
+        deletedSize = 0;
+    }
+
+    /**
+     * Переносим следующие MIGRATION_STEP ячеек старого массива.
+     * Если переезда нет, то ничего не делаем.
+     */
+    private void migrate() {
+        if (oldArray == null) return;
+        int to = Math.min(migrated + MIGRATION_STEP, oldArray.length);
+        for (int i = migrated; i < to; i++) {
+            Object o = oldArray[i];
+            if (o != null && o != DELETED) {
+                int index = freeSlot(oldHashes[i]);
+                array[index] = o;
+                hashes[index] = oldHashes[i];
+                oldArray[i] = DELETED;
+            }
+        }
+        migrated = to;
+        if (migrated == oldArray.length) {
+            oldArray = null;
+            oldHashes = null;
+        }
+    }
+
+    private void finishMigration() {
+        if (oldArray == null) return;
+        copyFromTo(oldArray, oldHashes, migrated);
+        oldArray = null;
+        oldHashes = null;
+    }
+
+    /**
+     * Копируем элементы из старого массива (from), начиная с ячейки start,
+     * в новый (array). Удаленные элементы не переносим. Все элементы разные,
+     * поэтому equals не нужен, достаточно найти свободную ячейку.
+     */
+    private void copyFromTo(Object[] from, int[] fromHashes, int start) {
+        for (int i = start; i < from.length; i++) {
+            Object o = from[i];
+            if (o != null && o != DELETED) {
+                int index = freeSlot(fromHashes[i]);
+                array[index] = o;
+                hashes[index] = fromHashes[i];
+                if (bloom != null) bloomAdd(fromHashes[i]);
+            }
+        }
+    }
+
+    /**
+     * rehash ограниченного сета в массив того же размера, вместе с битами
+     * обращения. Стрелка CLOCK вытесняет элемент, если дошла до него второй
+     * раз без обращения между проходами, поэтому нельзя, чтобы элемент,
+     * который стрелка только что прошла, оказался прямо перед ней.
+     * Копируем, начиная с первой пустой ячейки за стрелкой: тогда ни одна
+     * цепочка не перекладывается через начало копирования, и каждый элемент
+     * попадает между своей ячейкой по хэшу и старым местом, то есть
+     * сдвигается только назад и вперед через стрелку не перескакивает.
+     * С новыми хэшами (reseeded) элементы перемешиваются, и тогда каждому
+     * элементу, до которого стрелка теперь дойдет раньше, чем дошла бы
+     * на старом месте, ставим бит - даем второй шанс заново.
+     */
+    private void copyBounded(Object[] from, int[] fromHashes, long[] fromReferenced, boolean reseeded) {
+        int fromMask = from.length - 1;
+        int start = clockHand & fromMask;
+        while (from[start] != null) start = (start + 1) & fromMask;
+        for (int n = 0; n < from.length; n++) {
+            int i = (start + n) & fromMask;
+            Object o = from[i];
+            if (o != null && o != DELETED) {
+                int index = freeSlot(fromHashes[i]);
+                array[index] = o;
+                hashes[index] = fromHashes[i];
+                if (bloom != null) bloomAdd(fromHashes[i]);
+                if ((fromReferenced[i >>> 6] & 1L << i) != 0
+                        || reseeded && ((index - clockHand) & mask) < ((i - clockHand) & fromMask)) {
+                    reference(index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Начальная ячейка: перемешиваем хэш-код через spread() и берем маску
+     * по размеру массива. Маска берет только младшие биты, а spread()
+     * с seed этого сета делает каждый из них зависящим от всех бит
+     * хэш-кода, так что близкие хэш-коды (подряд идущие Integer, похожие
+     * строки) расходятся по всему массиву. В отличие от Math.abs(h) % size
+     * результат никогда не бывает отрицательным.
+     */
+    private int hash(int hashCode) {
+        return spread(hashCode) & mask;
+    }
+
+    /**
+     * Подмешиваем seed, умножаем на 2^32 / (золотое сечение) (фибоначчиево
+     * хэширование) и сдвигом подмешиваем старшие биты в младшие, затем
+     * еще раз умножаем и сдвигаем (финальный шаг MurmurHash3), чтобы каждый
+     * бит результата зависел от всех бит seed и хэш-кода. Без второго шага у хэш-кодов, которые
+     * отличаются только старшими битами, младшие биты результата совпадали
+     * бы при любом seed.
+     */
+    private int spread(int hashCode) {
+        return spread(hashCode, seed);
+    }
+
+    private static int spread(int hashCode, int seed) {
+        int h = (hashCode ^ seed) * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    /**
+     * Ищем ячейку, в которой лежит элемент o. Идем от начальной ячейки (hash)
+     * по кругу, переход в начало массива обеспечивает маска: (index + 1) & mask.
+     * Пустая ячейка (null) значит конец цепочки - элемента нет, возвращаем -1.
+     * Удаленные ячейки пропускаем. equals вызываем только при совпадении хэш-кодов.
+     */
+    private int indexOf(Object o, int hashCode) {
+        return (int) find(o, hashCode);
+    }
+
+    /**
+     * indexOf, который заодно возвращает длину поиска для статистики:
+     * в младших 32 битах индекс (или -1), в старших - сколько ячеек проверено.
+     * Результат не пишется в поля, поэтому indexOf можно по-прежнему
+     * вызывать из нескольких потоков.
+     */
+    private long find(Object o, int hashCode) {
+        int index = hash(hashCode);
+        for (int i = 0; i < array.length; i++) {
+            Object e = array[index];
+            if (e == null) return found(-1, i + 1);
+            if (hashes[index] == hashCode && e != DELETED && same(o, e)) return found(index, i + 1);
+            index = (index + 1) & mask;
+        }
+        return found(-1, array.length);
+    }
+
+    private static long found(int index, int probes) {
+        return ((long) probes << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    /**
+     * indexOf для старого массива во время переезда
+     */
+    private int indexOfOld(Object o, int hashCode) {
+        int index = spread(hashCode) & oldMask;
+        for (int i = 0; i < oldArray.length; i++) {
+            Object e = oldArray[index];
+            if (e == null) return -1;
+            if (oldHashes[index] == hashCode && e != DELETED && same(o, e)) return index;
+            index = (index + 1) & oldMask;
+        }
+        return -1;
+    }
+
+    /**
+     * То же самое, что indexOf, но по пути запоминаем первую удаленную ячейку.
+     * Если элемент нашелся, то возвращаем -1, а если дошли до пустой ячейки,
+     * то возвращаем первую удаленную (если была) или саму пустую.
+     * Длина поиска, как и в find, лежит в старших 32 битах.
+     */
+    private long findSlot(Object o, int hashCode) {
+        int index = hash(hashCode);
+        int firstDeleted = -1;
+        for (int i = 0; i < array.length; i++) {
+            Object e = array[index];
+            if (e == null) return found(firstDeleted == -1 ? index : firstDeleted, i + 1);
+            if (e == DELETED) {
+                if (firstDeleted == -1) firstDeleted = index;
+            } else if (hashes[index] == hashCode && same(o, e)) return found(-1, i + 1);
+            index = (index + 1) & mask;
+        }
+        return found(firstDeleted, array.length);
+    }
+
+    /**
+     * Первая пустая ячейка в цепочке. Используется, когда точно известно,
+     * что такого элемента в массиве нет (при rehash).
+     */
+    private int freeSlot(int hashCode) {
+        int index = hash(hashCode);
+        while (array[index] != null) index = (index + 1) & mask;
+        return index;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        return remove(o, hashCodeOf(o));
+    }
+
+    private boolean remove(Object o, int hashCode) {
+        migrate();
+        long found = find(o, hashCode);
+        if (stats != null) stats.remove = Counters.record(stats.remove, found);
+        int index = (int) found;
+        if (index != -1) {
+            beforeWrite(index);
+            array[index] = DELETED;
+            deletedSize++;
+        } else {
+            if (oldArray == null || (index = indexOfOld(o, hashCode)) == -1) return false;
+            oldArray[index] = DELETED;
+        }
+        realSize--;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Для больших c сначала доводим до конца переезд, после чего поиск
+     * (indexOf) только читает массивы, и его можно вести из нескольких
+     * потоков. Если c - тоже HashSet, то хэш-коды берем из его массива hashes.
+     * По размеру отвечаем сразу, только если равенство у сетов одно и то же:
+     * иначе несколько разных для c элементов могут быть равны одному нашему.
+     */
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (c == this) return true;
+        if (c instanceof HashSet) {
+            HashSet<?> other = (HashSet<?>) c;
+            boolean same = sameHashCodes(other);
+            if (strategy == other.strategy && other.size() > realSize) return false;
+            finishMigration();
+            other.finishMigration();
+            Object[] from = other.array;
+            int[] fromHashes = other.hashes;
+            return parallelCount(from.length, (lo, hi) -> {
+                for (int i = lo; i < hi; i++) {
+                    Object o = from[i];
+                    if (o != null && o != DELETED && indexOf(o, same ? fromHashes[i] : hashCodeOf(o)) == -1) return 1;
+                }
+                return 0;
+            }) == 0;
+        }
+        if (c.size() < PARALLEL_CHUNK) {
+            for (Object o : c) {
+                if (!contains(o)) return false;
+            }
+            return true;
+        }
+        finishMigration();
+        Object[] keys = c.toArray();
+        return parallelCount(keys.length, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) {
+                Object o = keys[i];
+                if (o == null || indexOf(o, hashCodeOf(o)) == -1) return 1;
+            }
+            return 0;
+        }) == 0;
+    }
+
+    /**
+     * true - если массив вообще изменился, даже если добавился
+     * только один элемент из всех.
+     * Objects.requireNonNull(c) - возращает объект, если он не null
+     * Если null, то выкидывает NPE.
+     * Массив увеличиваем один раз заранее, с запасом на все элементы c
+     * (как будто среди них нет ни одного нашего). Хэш-коды большой коллекции
+     * считаются параллельно, а вставка идет в текущем потоке.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(Collection<? extends T> c) {
+        Objects.requireNonNull(c);
+        if (c == this || c.isEmpty()) return false;
+        ensureCapacity((int) Math.min((long) realSize + c.size(), Integer.MAX_VALUE));
+        if (c instanceof HashSet) return addAll((HashSet<? extends T>) c);
+        boolean result = false;
+        if (c.size() < PARALLEL_CHUNK) {
+            for (T t : c) {
+                if (add(t)) result = true;
+            }
+            return result;
+        }
+        Object[] keys = c.toArray();
+        int[] keyHashes = new int[keys.length];
+        boolean wasKeyed = keyed;
+        parallelCount(keys.length, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) {
+                if (keys[i] != null) keyHashes[i] = hashCodeOf(keys[i]);
+            }
+            return 0;
+        });
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) continue;
+            /**
+             * Если по ходу сет перешел на SipHash, то посчитанные
+             * заранее хэш-коды больше не годятся
+             */
+            int hashCode = keyed == wasKeyed ? keyHashes[i] : hashCodeOf(keys[i]);
+            if (add((T) keys[i], hashCode)) result = true;
+        }
+        return result;
+    }
+
+    /**
+     * Слияние двух HashSet по ячейкам: хэш-коды берем из other.hashes.
+     * Если наш сет пуст, то все элементы other точно новые, и их можно
+     * раскладывать как при rehash, вообще без equals.
+     * Если один из сетов перешел на SipHash, то хэш-коды у них разные,
+     * и их приходится считать заново.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean addAll(HashSet<? extends T> other) {
+        other.finishMigration();
+        Object[] from = other.array;
+        int[] fromHashes = other.hashes;
+        if (realSize == 0 && deletedSize == 0 && oldArray == null && sameHashCodes(other)
+                && (limit == 0 || other.realSize <= limit) && cow == null) {
+            copyFromTo(from, fromHashes, 0);
+            realSize = other.realSize;
+            modCount++;
+            return true;
+        }
+        boolean result = false;
+        for (int i = 0; i < from.length; i++) {
+            Object o = from[i];
+            if (o != null && o != DELETED
+                    && add((T) o, sameHashCodes(other) ? fromHashes[i] : hashCodeOf(o))) result = true;
+        }
+        return result;
+    }
+
+    /**
+     * Добавление пачки keys[off, off + len). Возвращает битовую маску:
+     * бит i (result[i >>> 6] & 1L << i) стоит, если keys[off + i] добавлен,
+     * то есть его не было в сете и раньше в этой же пачке. null пропускаются.
+     * Как и addAll, сначала считаем хэш-коды всей пачки и один раз
+     * увеличиваем массив под realSize + len (с повторами в пачке он может
+     * получиться больше нужного), затем добавляем ключи по порядку.
+     * Сортировка пачки по начальным ячейкам не окупается: на 5-10 млн
+     * ключей она не быстрее addAll ни при каких размерах пачки.
+     */
+    @SuppressWarnings("unchecked")
+    public long[] addBatch(T[] keys, int off, int len) {
+        if (off < 0 || len < 0 || off > keys.length - len) {
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", length: " + keys.length);
+        }
+        long[] added = new long[(len + 63) >>> 6];
+        if (len == 0) return added;
+        finishMigration();
+        ensureCapacity((int) Math.min((long) realSize + len, Integer.MAX_VALUE));
+        int[] keyHashes = new int[len];
+        parallelCount(len, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) {
+                if (keys[off + i] != null) keyHashes[i] = hashCodeOf(keys[off + i]);
+            }
+            return 0;
+        });
+        boolean wasKeyed = keyed;
+        for (int i = 0; i < len; i++) {
+            T t = keys[off + i];
+            if (t == null) continue;
+            /**
+             * Если по ходу сет перешел на SipHash, то посчитанные
+             * заранее хэш-коды больше не годятся
+             */
+            int hashCode = keyed == wasKeyed ? keyHashes[i] : hashCodeOf(t);
+            if (add(t, hashCode)) added[i >>> 6] |= 1L << i;
+        }
+        return added;
+    }
+
+    /**
+     * Логическое "И". Оставляем то, что находится в
+     * нашем массиве и в том, который получен в качестве аргумента.
+     * true - если хоть что-то изменилось.
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        if (c == this) return false;
+        return sweep(c, true);
+    }
+
+    /**
+     * true - если массив вообще изменился, даже если удалился
+     * только один элемент из всех.
+     * Если c меньше нашего сета, то удаляем его элементы по одному,
+     * иначе проходим по своему массиву (sweep).
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            if (isEmpty()) return false;
+            clear();
+            return true;
+        }
+        if (c.size() >= realSize) return sweep(c, false);
+        boolean result = false;
+        if (c instanceof HashSet) {
+            HashSet<?> other = (HashSet<?>) c;
+            other.finishMigration();
+            for (int i = 0; i < other.array.length; i++) {
+                Object o = other.array[i];
+                if (o != null && o != DELETED
+                        && remove(o, sameHashCodes(other) ? other.hashes[i] : hashCodeOf(o))) result = true;
+            }
+            return result;
+        }
+        for (Object t : c) {
+            if (remove(t)) result = true;
+        }
+        return result;
+    }
+
+    /**
+     * Один проход по нашему массиву: элемент остается, если (c.contains) == keep,
+     * иначе на его место сразу ставим DELETED, без повторного поиска.
+     * Если c - HashSet, то проверяем по его массиву с готовыми хэш-кодами,
+     * и проход идет параллельно: каждый кусок пишет только в свои ячейки.
+     * Про произвольную коллекцию неизвестно, можно ли вызывать ее contains
+     * из нескольких потоков, поэтому для нее проход однопоточный.
+     * В конце раскладываем оставшиеся элементы заново в массив того же
+     * размера, чтобы не оставлять после себя удаленных ячеек.
+     */
+    private boolean sweep(Collection<?> c, boolean keep) {
+        finishMigration();
+        detach();
+        Object[] a = array;
+        int[] h = hashes;
+        int removed;
+        if (c instanceof HashSet) {
+            HashSet<?> other = (HashSet<?>) c;
+            other.finishMigration();
+            boolean same = sameHashCodes(other);
+            removed = parallelCount(a.length, (lo, hi) -> {
+                int count = 0;
+                for (int i = lo; i < hi; i++) {
+                    Object e = a[i];
+                    if (e != null && e != DELETED
+                            && (other.indexOf(e, same ? h[i] : other.hashCodeOf(e)) != -1) != keep) {
+                        a[i] = DELETED;
+                        count++;
+                    }
+                }
+                return count;
+            });
+        } else {
+            removed = 0;
+            for (int i = 0; i < a.length; i++) {
+                Object e = a[i];
+                if (e != null && e != DELETED && c.contains(e) != keep) {
+                    a[i] = DELETED;
+                    removed++;
+                }
+            }
+        }
+        if (removed == 0) return false;
+        realSize -= removed;
+        rehash(a.length);
+        return true;
+    }
+
+    /**
+     * Делит [0, length) на куски по PARALLEL_CHUNK, вызывает chunk(lo, hi)
+     * для каждого куска (параллельно, если кусков больше одного)
+     * и возвращает сумму результатов.
+     */
+    private static int parallelCount(int length, IntBinaryOperator chunk) {
+        if (length < 2 * PARALLEL_CHUNK) return chunk.applyAsInt(0, length);
+        int chunks = (length + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .map(k -> chunk.applyAsInt(k * PARALLEL_CHUNK, Math.min(length, (k + 1) * PARALLEL_CHUNK)))
+                .sum();
+    }
+
+    /**
+     * Количество общих элементов с other, без создания промежуточных сетов.
+     * Идем по меньшему из двух сетов и ищем его элементы в большем. Если other -
+     * тоже HashSet, то обходим массив меньшего напрямую и ищем по готовым
+     * хэш-кодам из hashes, так что не создается ни одного объекта.
+     */
+    public int intersectionSize(Set<?> other) {
+        if (other == this) return realSize;
+        finishMigration();
+        int count = 0;
+        if (other instanceof HashSet) {
+            HashSet<?> that = (HashSet<?>) other;
+            that.finishMigration();
+            HashSet<?> small = realSize <= that.realSize ? this : that;
+            HashSet<?> large = small == this ? that : this;
+            Object[] a = small.array;
+            int[] h = small.hashes;
+            boolean same = sameHashCodes(that);
+            for (int i = 0; i < a.length; i++) {
+                Object e = a[i];
+                if (e != null && e != DELETED && large.indexOf(e, same ? h[i] : large.hashCodeOf(e)) != -1) count++;
+            }
+        } else if (other.size() < realSize) {
+            for (Object o : other) {
+                if (o != null && indexOf(o, hashCodeOf(o)) != -1) count++;
+            }
+        } else {
+            for (Object e : array) {
+                if (e != null && e != DELETED && other.contains(e)) count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Коэффициент Жаккара |A и B| / |A или B|. Для двух пустых
+     * сетов возвращаем 1, так как они равны.
+     */
+    public double jaccard(Set<?> other) {
+        int common = intersectionSize(other);
+        long union = (long) realSize + other.size() - common;
+        return union == 0 ? 1.0 : (double) common / union;
+    }
+
+    /**
+     * Объединение с other. Это представление, а не копия: элементы не
+     * копируются, а каждый раз берутся из двух сетов, поэтому изменения
+     * в них сразу видны. Изменять само представление нельзя.
+     * Итератор отдает все наши элементы, потом элементы other, которых у нас нет.
+     */
+    public Set<T> union(Set<? extends T> other) {
+        Objects.requireNonNull(other);
+        return new AbstractSet<T>() {
+            @Override
+            public boolean contains(Object o) {
+                return HashSet.this.contains(o) || other.contains(o);
+            }
+
+            @Override
+            public Iterator<T> iterator() {
+                Iterator<T> first = HashSet.this.iterator();
+                Iterator<T> rest = new FilterIterator<>(other.iterator(), HashSet.this, false);
+                return new Iterator<T>() {
+                    @Override
+                    public boolean hasNext() {
+                        return first.hasNext() || rest.hasNext();
+                    }
+
+                    @Override
+                    public T next() {
+                        return first.hasNext() ? first.next() : rest.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return realSize + other.size() - intersectionSize(other);
+            }
+        };
+    }
+
+    /**
+     * Пересечение с other, тоже представление. Итератор идет по меньшему
+     * из двух сетов, поэтому элементы могут отдаваться из other
+     * (они равны нашим по equals).
+     */
+    @SuppressWarnings("unchecked")
+    public Set<T> intersection(Set<?> other) {
+        Objects.requireNonNull(other);
+        return new AbstractSet<T>() {
+            @Override
+            public boolean contains(Object o) {
+                return HashSet.this.contains(o) && other.contains(o);
+            }
+
+            @Override
+            public Iterator<T> iterator() {
+                if (realSize <= other.size()) return new FilterIterator<>(HashSet.this.iterator(), other, true);
+                return new FilterIterator<>((Iterator<T>) other.iterator(), HashSet.this, true);
+            }
+
+            @Override
+            public int size() {
+                return intersectionSize(other);
+            }
+        };
+    }
+
+    /**
+     * Разность: наши элементы, которых нет в other. Тоже представление.
+     */
+    public Set<T> difference(Set<?> other) {
+        Objects.requireNonNull(other);
+        return new AbstractSet<T>() {
+            @Override
+            public boolean contains(Object o) {
+                return HashSet.this.contains(o) && !other.contains(o);
+            }
+
+            @Override
+            public Iterator<T> iterator() {
+                return new FilterIterator<>(HashSet.this.iterator(), other, false);
+            }
+
+            @Override
+            public int size() {
+                return realSize - intersectionSize(other);
+            }
+        };
+    }
+
+    /**
+     * Отдает те элементы iterator, для которых set.contains(e) == inSet.
+     * Следующий подходящий элемент ищется заранее, в hasNext().
+     */
+    private static final class FilterIterator<E> implements Iterator<E> {
+        final Iterator<? extends E> iterator;
+        final Set<?> set;
+        final boolean inSet;
+        E next;
+
+        FilterIterator(Iterator<? extends E> iterator, Set<?> set, boolean inSet) {
+            this.iterator = iterator;
+            this.set = set;
+            this.inSet = inSet;
+        }
 
-    Entry(V value) {
-        this.value = value;
-    }
+        @Override
+        public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                E e = iterator.next();
+                if (e != null && set.contains(e) == inSet) next = e;
+            }
+            return next != null;
+        }
 
-    @Override
-    public int hashCode() {
-        return value.hashCode();
+        @Override
+        public E next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            E e = next;
+            next = null;
+            return e;
+        }
     }
 
+    /**
+     * Размер массива не меняем, только очищаем ячейки, чтобы сет, который
+     * заполняют заново, не увеличивался каждый раз с нуля. Уменьшить массив
+     * можно через trimToSize(). Хэш-коды не трогаем: для пустых ячеек
+     * они никогда не читаются. Если массив делит снимок, то вместо
+     * очистки заводим новый.
+     */
     @Override
-    public boolean equals(Object obj) {
-        return obj == this || value.equals(obj);
+    public void clear() {
+        realSize = 0;
+        deletedSize = 0;
+        oldArray = null;
+        oldHashes = null;
+        modCount++;
+        if (cow != null) {
+            array = new Object[array.length];
+            hashes = new int[array.length];
+            cow = null;
+        } else {
+            Arrays.fill(array, null);
+        }
+        if (bloom != null) Arrays.fill(bloom, 0);
+        if (referenced != null) Arrays.fill(referenced, 0);
+        clockHand = 0;
     }
-}
 
-/**
- * Это класс-синглтон (паттерн Singleton).
- * Класс, который может иметь один единственный
- * экземпляр. Он является меткой для
- * удаленных элементов.
- */
-final class DeletedEntry extends Entry {
     /**
-     * Поле статическое, значит оно ОДНО на класс.
+     * Свои hashCode и equals для элементов сета. Нужны, когда у элементов
+     * нет подходящих своих (byte[] сравнивается по ссылке) или когда
+     * сравнивать надо иначе, чем equals.
+     * Если a и b равны, то и их хэш-коды должны быть равны.
      */
-    private static DeletedEntry value;
+    public interface HashingStrategy<E> {
+        int hashCode(E e);
+
+        boolean equals(E a, E b);
+
+        /**
+         * byte[] по содержимому, как Arrays.equals и Arrays.hashCode
+         */
+        HashingStrategy<byte[]> BYTE_ARRAY = new HashingStrategy<byte[]>() {
+            @Override
+            public int hashCode(byte[] e) {
+                return Arrays.hashCode(e);
+            }
+
+            @Override
+            public boolean equals(byte[] a, byte[] b) {
+                return Arrays.equals(a, b);
+            }
+        };
+
+        /**
+         * CharSequence по содержимому: String, StringBuilder и другие с теми
+         * же символами равны друг другу. Хэш-код считается по той же формуле,
+         * что и String.hashCode(), поэтому для String берется уже посчитанный
+         * и закэшированный в самой строке.
+         */
+        HashingStrategy<CharSequence> CHAR_SEQUENCE = new HashingStrategy<CharSequence>() {
+            @Override
+            public int hashCode(CharSequence e) {
+                if (e instanceof String) return e.hashCode();
+                int h = 0;
+                for (int i = 0; i < e.length(); i++) h = 31 * h + e.charAt(i);
+                return h;
+            }
+
+            @Override
+            public boolean equals(CharSequence a, CharSequence b) {
+                if (a == b) return true;
+                if (a instanceof String && b instanceof String) return a.equals(b);
+                int length = a.length();
+                if (b.length() != length) return false;
+                for (int i = 0; i < length; i++) {
+                    if (a.charAt(i) != b.charAt(i)) return false;
+                }
+                return true;
+            }
+        };
+    }
 
     /**
-     * Конструктор приватный, так как нам не нужно, чтобы
-     * кто-то мог создавать лишние объекты.
-     * Здесь super значит вызов конструктора класса Entry, от которого
-     * наследуется данный класс, то есть конструктор класса Entry.
+     * Как записать элемент в поток и прочитать его обратно
      */
-    private DeletedEntry() {
-        super(null);
+    public interface Codec<E> {
+        void write(E value, DataOutput out) throws IOException;
+
+        E read(DataInput in) throws IOException;
+
+        /**
+         * Строки в UTF-8: длина в байтах, затем сами байты.
+         * В отличие от writeUTF, длина строки не ограничена 64 Кб.
+         */
+        Codec<String> STRING = new Codec<String>() {
+            @Override
+            public void write(String value, DataOutput out) throws IOException {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+
+        Codec<Integer> INTEGER = new Codec<Integer>() {
+            @Override
+            public void write(Integer value, DataOutput out) throws IOException {
+                out.writeInt(value);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+
+        Codec<Long> LONG = new Codec<Long>() {
+            @Override
+            public void write(Long value, DataOutput out) throws IOException {
+                out.writeLong(value);
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                return in.readLong();
+            }
+        };
     }
 
     /**
-     * Метод, после первого вызова которого, создается экземпляр
-     * данного класса, если метод уже вызывался единожды, то будет
-     * возвращен экземпляр, созданный при первом вызове.
+     * Снимок сета вместе с раскладкой по ячейкам. Формат:
+     * SNAPSHOT_MAGIC, SNAPSHOT_VERSION, HASH_FUNCTION, seed, размер массива,
+     * maxFullness, количество элементов, количество удаленных ячеек,
+     * индексы удаленных ячеек, затем для каждого элемента индекс его
+     * ячейки, хэш-код и сам элемент (через codec).
+     * Раскладка зависит от seed, поэтому он тоже сохраняется. Если сет
+     * перешел на SipHash, то вместо HASH_FUNCTION пишется 0: ключ SipHash
+     * не сохраняется, и такой снимок загружается обычным добавлением.
+     * Так же и для сета со strategy: сама strategy не сохраняется,
+     * ее надо передать в readFrom.
+     * Поток не закрывается.
      */
-    public static Entry getInstance() {
-        if (value == null) value = new DeletedEntry();
-        return value;
+    public void writeTo(OutputStream out, Codec<? super T> codec) throws IOException {
+        writeTo(new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE)), codec);
     }
 
     /**
-     * Нам необходимо переопределить метод equals, потому что
-     * наш класс не должен быть равен ничему, кроме самого себя.
-     * Поэтому возвращаем true, только если ссылки совпадают
+     * writeTo в канал, например в FileChannel, через ByteBuffer
      */
-    @Override
-    public boolean equals(Object obj) {
-        return obj == this;
+    public void writeTo(WritableByteChannel channel, Codec<? super T> codec) throws IOException {
+        writeTo(new DataOutputStream(new ChannelOutput(channel)), codec);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeTo(DataOutputStream data, Codec<? super T> codec) throws IOException {
+        Objects.requireNonNull(codec);
+        finishMigration();
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeInt(SNAPSHOT_VERSION);
+        data.writeInt(keyed || strategy != null ? 0 : HASH_FUNCTION);
+        data.writeInt(seed);
+        data.writeInt(array.length);
+        data.writeDouble(maxFullness);
+        data.writeInt(realSize);
+        data.writeInt(deletedSize);
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == DELETED) data.writeInt(i);
+        }
+        for (int i = 0; i < array.length; i++) {
+            Object e = array[i];
+            if (e != null && e != DELETED) {
+                data.writeInt(i);
+                data.writeInt(hashes[i]);
+                codec.write((T) e, data);
+            }
+        }
+        data.flush();
     }
-}
 
-public class HashSet<T> implements Set<T> {
     /**
-     * Максимально допустимая заполненность массива
+     * Загрузка снимка. Если хэш-функция та же, то элементы кладутся прямо
+     * в сохраненные ячейки: без поиска, без equals и без увеличений массива.
+     * hashCode() все же вызывается, чтобы проверить, что он не изменился
+     * (у объектов без своего hashCode он разный в разных запусках). Если
+     * хоть один хэш-код не совпал, то в конце раскладываем все заново по
+     * настоящим хэш-кодам. Если снимок сделан с другой хэш-функцией,
+     * то элементы просто добавляются по одному.
+     * Поток читается ровно до конца снимка и без своего буфера: после
+     * снимка в нем могут идти другие данные. Поэтому файл лучше читать
+     * через BufferedInputStream или readFrom(FileChannel).
      */
-    private static final double MAX_FULLNESS = 0.7;
+    public static <E> HashSet<E> readFrom(InputStream in, Codec<E> codec) throws IOException {
+        return readFrom(in, codec, null);
+    }
+
     /**
-     * Выбран размер, равный степени 2, чтобы можно было
-     * увеличивать размер массива до Integer.MAX_VALUE - 1
+     * Загрузка снимка в сет со strategy (null - без нее). Со strategy
+     * элементы всегда добавляются по одному.
      */
-    private static final int INITIAL_SIZE = 128;
-    private Entry<T>[] array;
-    private int realSize;
+    public static <E> HashSet<E> readFrom(InputStream in, Codec<E> codec,
+                                          HashingStrategy<? super E> strategy) throws IOException {
+        return readFrom(new DataInputStream(in), codec, strategy);
+    }
+
     /**
-     * Экземпляр маркера "удален". Инициализируется в конструкторе.
+     * Загрузка снимка из канала через ByteBuffer. Буфер читает с запасом,
+     * но у FileChannel (и любого SeekableByteChannel) позиция в конце
+     * возвращается сразу за снимок. У других каналов лишние байты
+     * после снимка теряются.
      */
-    private Entry deleted;
-    private int arraySize = INITIAL_SIZE;
-    private boolean reachedMaxSize;
-
-    @SuppressWarnings("unchecked")
-    HashSet() {
-        array = (Entry<T>[]) new Entry[INITIAL_SIZE];
-        deleted = DeletedEntry.getInstance();
+    public static <E> HashSet<E> readFrom(ReadableByteChannel channel, Codec<E> codec) throws IOException {
+        ChannelInput input = new ChannelInput(channel);
+        HashSet<E> set = readFrom(new DataInputStream(input), codec, null);
+        input.giveBack();
+        return set;
     }
 
-    @Override
-    public int size() {
-        return realSize;
+    private static <E> HashSet<E> readFrom(DataInputStream data, Codec<E> codec,
+                                           HashingStrategy<? super E> strategy) throws IOException {
+        Objects.requireNonNull(codec);
+        if (data.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a HashSet snapshot");
+        int version = data.readInt();
+        if (version < 1 || version > SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported HashSet snapshot version: " + version);
+        }
+        int hashFunction = data.readInt();
+        int seed = version >= 2 ? data.readInt() : 0;
+        int length = data.readInt();
+        double maxFullness = data.readDouble();
+        int size = data.readInt();
+        int deleted = data.readInt();
+        if (length < MIN_SIZE || length > MAX_SIZE || Integer.bitCount(length) != 1
+                || !(maxFullness > 0 && maxFullness < 1) || size < 0 || deleted < 0
+                || (long) size + deleted >= length) {
+            throw new IOException("Corrupted HashSet snapshot");
+        }
+        if (hashFunction != HASH_FUNCTION || strategy != null) {
+            HashSet<E> set = new HashSet<>(tableSizeFor(size, maxFullness), maxFullness, false, strategy, 0);
+            for (int i = 0; i < deleted; i++) data.readInt();
+            for (int i = 0; i < size; i++) {
+                data.readInt();
+                data.readInt();
+                set.add(readElement(data, codec));
+            }
+            return set;
+        }
+        HashSet<E> set = new HashSet<>(length, maxFullness, false, null, 0);
+        set.seed = seed;
+        for (int i = 0; i < deleted; i++) {
+            set.array[checkIndex(data.readInt(), set.array)] = DELETED;
+        }
+        boolean hashChanged = false;
+        for (int i = 0; i < size; i++) {
+            int index = checkIndex(data.readInt(), set.array);
+            int hashCode = data.readInt();
+            E e = readElement(data, codec);
+            if (e.hashCode() != hashCode) {
+                hashCode = e.hashCode();
+                hashChanged = true;
+            }
+            set.array[index] = e;
+            set.hashes[index] = hashCode;
+        }
+        set.realSize = size;
+        set.deletedSize = deleted;
+        if (hashChanged) set.rehash(length);
+        return set;
     }
 
-    @Override
-    public boolean isEmpty() {
-        return realSize == 0;
+    private static <E> E readElement(DataInput data, Codec<E> codec) throws IOException {
+        E e = codec.read(data);
+        if (e == null) throw new IOException("Codec returned null for a HashSet snapshot element");
+        return e;
     }
 
-    @Override
-    public boolean contains(Object o) {
-        if (o == null) return false;
-        int index = hash(o);
-        for (int i = 0; i < array.length; i++) {
-            int newIndex = (index + i) % array.length;
-            if (array[newIndex] == null) return false;
-            if (o.equals(array[newIndex].value)) return true;
+    /**
+     * Индекс из снимка должен попадать в массив и указывать на еще
+     * свободную ячейку, иначе size() разойдется с содержимым
+     */
+    private static int checkIndex(int index, Object[] array) throws IOException {
+        if (index < 0 || index >= array.length || array[index] != null) {
+            throw new IOException("Corrupted HashSet snapshot");
         }
-        return false;
+        return index;
     }
 
-    @Override
-    public Iterator<T> iterator() {
-        return new HashIterator();
-    }
+    /**
+     * Запись в канал через ByteBuffer: байты копятся в буфере
+     * и уходят в канал целым буфером
+     */
+    private static final class ChannelOutput extends OutputStream {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
 
-    private final class HashIterator implements Iterator<T> {
-        T current;
-        int size = realSize;
-        int from = 0;
+        ChannelOutput(WritableByteChannel channel) {
+            this.channel = channel;
+        }
 
         @Override
-        public boolean hasNext() {
-            return size > 0;
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) b);
         }
 
         @Override
-        @SuppressWarnings("unchecked")
-        public T next() {
-            if (!hasNext()) throw new NoSuchElementException();
-            Entry<T> it = null;
-            size--;
-            for (int i = from; i < array.length; i++) {
-                if ((it = array[i]) != null && it != deleted) {
-                    from = i + 1;
-                    break;
-                }
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) drain();
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
             }
-            current = it.value;
-            return current;
         }
 
         @Override
-        public void remove() {
-            HashSet.this.remove(current);
+        public void flush() throws IOException {
+            drain();
         }
-    }
 
-    @Override
-    public Object[] toArray() {
-        Object[] newArray = new Object[realSize];
-        Iterator<T> iterator = iterator();
-        for (int i = 0; i < realSize; i++) {
-            newArray[i] = iterator.next();
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
         }
-        return newArray;
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public <T1> T1[] toArray(T1[] a) {
-        return null;
+    /**
+     * Чтение из канала через ByteBuffer. giveBack() в конце возвращает
+     * непрочитанный остаток буфера, если у канала есть позиция.
+     */
+    private static final class ChannelInput extends InputStream {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ChannelInput(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            while (!buffer.hasRemaining()) {
+                buffer.clear();
+                int n = channel.read(buffer);
+                buffer.flip();
+                if (n == -1) return false;
+            }
+            return true;
+        }
+
+        void giveBack() throws IOException {
+            if (buffer.hasRemaining() && channel instanceof SeekableByteChannel) {
+                SeekableByteChannel seekable = (SeekableByteChannel) channel;
+                seekable.position(seekable.position() - buffer.remaining());
+            }
+        }
     }
 
     /**
-     * В самом начале проверяем достиг ли наш массив максимальной заполненности
-     * Если да, то пытаемся увеличить массив. Если это удается, то идем дальше, если нет
-     * возвращаем false. Далее проверяем имеется ли у нас уже такой элемент, если
-     * да, то не добавляем, если нет, то добавляем.
-     * Если не нашли место куда добавить (whereToAdd == -1), чего
-     * быть просто не может, то возращаем false.
+     * Включает или выключает фильтр Блума перед contains. Он ускоряет
+     * поиск отсутствующих элементов: большинство из них отсекается одной
+     * проверкой слова фильтра, без прохода по цепочке и вызовов equals.
+     * Для присутствующих элементов это лишняя проверка, поэтому фильтр
+     * выгоден, когда contains в основном промахивается.
+     * С постепенным увеличением массива не работает: фильтр пришлось бы
+     * строить заново по всем элементам, то есть ждать столько же, сколько
+     * и при обычном rehash.
      */
-    @Override
-    public boolean add(T t) {
-        if (t == null) return false;
-        if ((double) realSize / array.length > MAX_FULLNESS) {
-            if (!resize()) return false;
+    public void setBloomFilterEnabled(boolean enabled) {
+        if (!enabled) {
+            bloom = null;
+            return;
         }
-        if (contains(t)) return false;
-        int whereAdd = whereToAdd(t);
-        if (whereAdd == -1) return false;
-        array[whereAdd] = new Entry<>(t);
-        realSize++;
-        return true;
+        if (incrementalResize) throw new IllegalStateException("Bloom filter is not supported with incremental resize");
+        if (bloom != null) return;
+        bloom = new long[bloomSizeFor(array.length)];
+        for (int i = 0; i < array.length; i++) {
+            Object e = array[i];
+            if (e != null && e != DELETED) bloomAdd(hashes[i]);
+        }
+    }
+
+    public boolean isBloomFilterEnabled() {
+        return bloom != null;
+    }
+
+    private static int bloomSizeFor(int capacity) {
+        return Math.max(1, capacity / BLOOM_SLOTS_PER_WORD);
     }
 
     /**
-     * В самом начале проверяем, достиг ли наш массив максимально возможного размера
-     * Если нет, то увеличиваем размер в 2 раза. Если после увеличения, размер стал равен
-     * Integer.MIN_VALUE именно минимальное значение, так как Integer.MAX_VALUE + 1, которого
-     * достигнет размер массива, при последнем увеличении, переполяет int и уходит в его
-     * минимальное значение, мы должны уменьшить это число на единицу, что даст нам
-     * Integer.MAX_VALUE (строчка newSize -= 1)
-     * При достижении максимального размера указываем, что дальше расти некуда
-     * (записываем true в reachedMaxSize)
-     * Если увеличение произошло, то нужно распределить элементы в массиве с новым размером,
-     * поэтому обновлем размер (arraySize) и выполняем rehash()
-     * [-2147483648, 2147483647]
+     * 64-битное перемешивание хэш-кода, независимое от spread: младшие биты
+     * выбирают слово фильтра, четыре старших 6-битных куска - биты в нем
      */
-    private boolean resize() {
-        if (reachedMaxSize) return false;
-        int newSize = array.length * 2;
-        if (newSize == Integer.MIN_VALUE) {
-            reachedMaxSize = true;
-            newSize -= 1;
-        }
-        if (newSize < 0) return false;
-        arraySize = newSize;
-        rehash();
-        return true;
+    private static long bloomMix(int hashCode) {
+        long z = hashCode * 0x9E3779B97F4A7C15L;
+        return z ^ (z >>> 32);
     }
 
     /**
-     * Здесь заново считаем хэш-функцию, чтобы распределить элементы с учетом
-     * нового размера. Идет следующий порядок вызовов -
-     * rehash() -> copyFromTo() -> whereToAdd() -> hash()
-     * Хэш-функция в самом конце этого списка.
+     * Сдвиг long берет только младшие 6 бит расстояния
      */
-    @SuppressWarnings("unchecked")
-    private void rehash() {
-        Entry<T>[] oldArray = array;
-        Entry<T>[] newArray = (Entry<T>[]) new Entry[arraySize];
-        array = newArray;
-        copyFromTo(oldArray, newArray);
+    private static long bloomBits(long z) {
+        return 1L << (z >>> 40) | 1L << (z >>> 46) | 1L << (z >>> 52) | 1L << (z >>> 58);
+    }
+
+    private void bloomAdd(int hashCode) {
+        long z = bloomMix(hashCode);
+        bloom[(int) z & (bloom.length - 1)] |= bloomBits(z);
+    }
+
+    private boolean bloomMayContain(int hashCode) {
+        long z = bloomMix(hashCode);
+        long bits = bloomBits(z);
+        return (bloom[(int) z & (bloom.length - 1)] & bits) == bits;
     }
 
     /**
-     * Копируем элементы из старого массива (from) в новый (to),
-     * размер которой в 2 раза больше
+     * Ожидаемая доля ложных срабатываний фильтра по его заполненности:
+     * отсутствующий элемент проходит, если все 4 его бита в своем слове
+     * уже стоят. NaN - если фильтр выключен.
      */
-    private void copyFromTo(Entry<T>[] from, Entry<T>[] to) {
-        for (Entry<T> o : from) {
-            if (o != null) {
-                int index = whereToAdd(o);
-                if (index == -1) {
-                    throw new Error("It's wasn't supposed to happen!");
-                }
-                to[index] = o;
-            }
+    private double bloomExpectedFalsePositiveRate() {
+        long[] b = bloom;
+        if (b == null) return Double.NaN;
+        double sum = 0;
+        for (long word : b) {
+            double fill = Long.bitCount(word) / 64.0;
+            sum += fill * fill * fill * fill;
         }
+        return sum / b.length;
     }
 
     /**
-     * Простая хэш-функция, которая берет модуль от хэш-кода по размеру массива
+     * Включает или выключает сбор статистики. При выключении
+     * накопленные счетчики сбрасываются.
      */
-    private int hash(Object o) {
-        int hash = Math.abs(o.hashCode());
-        return hash % arraySize;
+    public void setStatsEnabled(boolean enabled) {
+        if (!enabled) {
+            stats = null;
+        } else if (stats == null) {
+            stats = new Counters();
+        }
+    }
+
+    public boolean isStatsEnabled() {
+        return stats != null;
     }
 
     /**
-     * Ищем куда можно добавить элемент. Определяем начальный, куда необходимо
-     * попробывать добавить (hash). Затем, если в ячейке null или deleted (Singleton),
-     * то возращаем этот индекс. Если ячейка занята, то просто пытаемся добавиь в следующую.
-     * Идем так по кругу, пока не найдем свободную ячейку.
-     *
-     * Ход по кругу обеспечивается этой строчкой (index + i) % arraySize
-     * То есть когда сумма index + i даст нам значение больше arraySize, то будем
-     * взят остаток от делания на arraySize, что кинет нас в начало массива.
-     *
-     * Необходимо учесть что при больших размерах массива index + i может уйти в
-     * отрицательные значения из-за переполнения int. Поэтому мы завели переменную
-     * sum, которую проверяем на отрицательность.
-     *
-     * Пример. Допустим int определен в таком диапазоне от -8  до 7, то есть
-     * Integer.MAX_VALUE = 7. Наш массив достиг этого максимального значение и получилась
-     * такая ситуация index + i = 7 + 5 = -4 из переполнения.
-     * Нам нужно чтобы в таком случае счет шел с 0, в нашем случае переполнение
-     * произошло на 5 единиц, с учетом того, что счет идет с нуля, мы должны попасть
-     * в 4. Для этого мы просто вычтем из полученного значения минимальное, то есть
-     * -4 - (-8) = -4+8, что даст нам 4
-     */
-    private int whereToAdd(Object o) {
-        int index = hash(o);
-        for (int i = 0; i < arraySize; i++) {
-            int sum = (index + i);
-            if (sum < 0) sum -= Integer.MIN_VALUE;
-            int newIndex = sum % arraySize;
-            if (array[newIndex] == null || array[newIndex] == deleted) return newIndex;
-        }
-        return -1;
+     * Снимок статистики. Размер, удаленные ячейки и самый длинный кластер
+     * (самая длинная цепочка занятых ячеек подряд) считаются по массиву
+     * всегда, а гистограммы и счетчики увеличений - только за то время,
+     * пока статистика включена.
+     */
+    public HashSetStats stats() {
+        Counters c = stats;
+        return new HashSetStats(realSize, array.length, deletedSize,
+                c == null ? 0 : c.resizes, c == null ? 0 : c.rehashNanos, largestCluster(),
+                c == null ? new long[0] : c.contains.clone(),
+                c == null ? new long[0] : c.add.clone(),
+                c == null ? new long[0] : c.remove.clone(),
+                c == null || bloom == null ? Double.NaN : c.bloomFalsePositiveRate(),
+                bloomExpectedFalsePositiveRate(), c == null ? 0 : c.evictions);
     }
 
-    @Override
-    public boolean remove(Object o) {
-        if (o == null) return false;
-        int hash = hash(o);
-        for (int i = 0; i < arraySize; i++) {
-            int newIndex = (hash + i) % arraySize;
-            if (array[newIndex] == null) return false;
-            else if (array[newIndex].equals(o)) {
-                array[newIndex] = deleted;
-                realSize--;
-                break;
+    /**
+     * Самая длинная цепочка занятых (живых или удаленных) ячеек подряд,
+     * с учетом перехода через конец массива
+     */
+    private int largestCluster() {
+        Object[] a = array;
+        int start = 0;
+        while (start < a.length && a[start] != null) start++;
+        if (start == a.length) return a.length;
+        int largest = 0;
+        int run = 0;
+        for (int i = 1; i <= a.length; i++) {
+            if (a[(start + i) & (a.length - 1)] != null) {
+                run++;
+                largest = Math.max(largest, run);
+            } else {
+                run = 0;
             }
         }
-        return true;
+        return largest;
     }
 
-    @Override
-    public boolean containsAll(Collection<?> c) {
-        for (Object o : c) {
-            if (!contains(o)) return false;
+    /**
+     * Регистрирует статистику этого сета в платформенном MBeanServer под
+     * именем HashSet:name=<name> и включает ее сбор. Атрибуты читаются из
+     * снимка, который пересоздается не чаще раза в секунду: поиск самого
+     * длинного кластера проходит по всему массиву.
+     * Сет не потокобезопасен, поэтому значения, прочитанные через JMX
+     * во время изменений сета, приблизительные.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        setStatsEnabled(true);
+        ObjectName objectName = new ObjectName("HashSet", "name", name);
+        ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new StandardMBean(new StatsBean(), HashSetStatsMBean.class), objectName);
+        return objectName;
+    }
+
+    private static final class Counters {
+        long[] contains = new long[0];
+        long[] add = new long[0];
+        long[] remove = new long[0];
+        long resizes;
+        long rehashNanos;
+        /**
+         * Промахи contains, отсеянные фильтром Блума, и промахи,
+         * которые фильтр пропустил
+         */
+        long bloomNegatives;
+        long bloomFalsePositives;
+        /**
+         * Сколько элементов вытеснил ограниченный сет
+         */
+        long evictions;
+
+        double bloomFalsePositiveRate() {
+            long misses = bloomNegatives + bloomFalsePositives;
+            return misses == 0 ? Double.NaN : (double) bloomFalsePositives / misses;
+        }
+
+        /**
+         * Добавляет в гистограмму длину поиска из результата find/findSlot
+         */
+        static long[] record(long[] histogram, long found) {
+            int bucket = (int) (found >>> 32) - 1;
+            if (bucket >= histogram.length) histogram = Arrays.copyOf(histogram, bucket + 1);
+            histogram[bucket]++;
+            return histogram;
         }
-        return true;
     }
 
-    /**
-     * true - если массив вообще изменился, даже если добавился
-     * только один элемент из всех.
-     * Objects.requireNonNull(c) - возращает объект, если он не null
-     * Если null, то выкидывает NPE.
-     */
-    @Override
-    public boolean addAll(Collection<? extends T> c) {
-        Objects.requireNonNull(c);
-        boolean result = false;
-        for (T t : c) {
-            if (add(t)) result = true;
+    private final class StatsBean implements HashSetStatsMBean {
+        private HashSetStats snapshot;
+        private long takenAt;
+
+        private synchronized HashSetStats snapshot() {
+            long now = System.nanoTime();
+            if (snapshot == null || now - takenAt > 1_000_000_000L) {
+                snapshot = stats();
+                takenAt = now;
+            }
+            return snapshot;
+        }
+
+        @Override
+        public int getSize() {
+            return snapshot().getSize();
+        }
+
+        @Override
+        public int getCapacity() {
+            return snapshot().getCapacity();
+        }
+
+        @Override
+        public int getTombstones() {
+            return snapshot().getTombstones();
+        }
+
+        @Override
+        public double getLoadFactor() {
+            return snapshot().getLoadFactor();
+        }
+
+        @Override
+        public double getFullness() {
+            return snapshot().getFullness();
+        }
+
+        @Override
+        public long getResizeCount() {
+            return snapshot().getResizeCount();
+        }
+
+        @Override
+        public long getRehashNanos() {
+            return snapshot().getRehashNanos();
+        }
+
+        @Override
+        public int getLargestCluster() {
+            return snapshot().getLargestCluster();
+        }
+
+        @Override
+        public long[] getContainsProbes() {
+            return snapshot().getContainsProbes();
+        }
+
+        @Override
+        public long[] getAddProbes() {
+            return snapshot().getAddProbes();
+        }
+
+        @Override
+        public long[] getRemoveProbes() {
+            return snapshot().getRemoveProbes();
+        }
+
+        @Override
+        public double getContainsMeanProbes() {
+            return snapshot().getContainsMeanProbes();
+        }
+
+        @Override
+        public double getAddMeanProbes() {
+            return snapshot().getAddMeanProbes();
+        }
+
+        @Override
+        public double getRemoveMeanProbes() {
+            return snapshot().getRemoveMeanProbes();
+        }
+
+        @Override
+        public double getBloomFalsePositiveRate() {
+            return snapshot().getBloomFalsePositiveRate();
+        }
+
+        @Override
+        public double getBloomExpectedFalsePositiveRate() {
+            return snapshot().getBloomExpectedFalsePositiveRate();
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return snapshot().getEvictionCount();
         }
-        return result;
     }
 
     /**
-     * Логическое "И". Оставляем то, что находится в
-     * нашем массиве и в том, который получен в качестве аргумента.
-     * true - если хоть что-то изменилось.
+     * Гистограмма длин поиска для элементов, которые есть в сете:
+     * result[k] - сколько элементов находится за k + 1 проверку ячеек.
      */
-    @Override
-    @SuppressWarnings("unchecked")
-    public boolean retainAll(Collection<?> c) {
-        Objects.requireNonNull(c);
-        boolean modified = false;
-        Iterator<T> iterator = iterator();
-        while (iterator.hasNext()) {
-            if (!c.contains(iterator.next())) {
-                iterator.remove();
-                modified = true;
+    int[] hitProbeLengths() {
+        finishMigration();
+        int[] result = new int[1];
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] != null && array[i] != DELETED) {
+                result = increment(result, (i - hash(hashes[i])) & mask);
             }
         }
-        return modified;
+        return result;
     }
 
     /**
-     * true - если массив вообще изменился, даже если удалился
-     * только один элемент из всех.
+     * Гистограмма длин неудачного поиска в том же виде: для каждой начальной
+     * ячейки считаем, сколько ячеек проверит indexOf, прежде чем дойдет до null.
      */
-    @Override
-    public boolean removeAll(Collection<?> c) {
-        Objects.requireNonNull(c);
-        boolean result = false;
-        for (Object t : c) {
-            if (remove(t)) result = true;
+    int[] missProbeLengths() {
+        finishMigration();
+        int[] result = new int[1];
+        for (int home = 0; home < array.length; home++) {
+            int index = home;
+            int dist = 0;
+            while (array[index] != null) {
+                index = (index + 1) & mask;
+                dist++;
+            }
+            result = increment(result, dist);
         }
         return result;
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public void clear() {
-        realSize = 0;
-        arraySize = INITIAL_SIZE;
-        array = (Entry<T>[]) new Entry[INITIAL_SIZE];
+    private static int[] increment(int[] histogram, int bucket) {
+        if (bucket >= histogram.length) histogram = Arrays.copyOf(histogram, bucket + 1);
+        histogram[bucket]++;
+        return histogram;
     }
 
     @Override
@@ -378,11 +2488,15 @@ public class HashSet<T> implements Set<T> {
         } else return false;
     }
 
+    /**
+     * Сумма хэш-кодов элементов, с strategy - ее хэш-кодов:
+     * равные (по strategy) сеты должны давать равный hashCode
+     */
     @Override
     public int hashCode() {
         int h = 0;
         for (T obj : this) {
-            if (obj != null && obj != deleted) h += obj.hashCode();
+            if (obj != null) h += plainHashCode(obj);
         }
         return h;
     }
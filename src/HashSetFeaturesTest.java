@@ -0,0 +1,710 @@
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты того, что есть только у HashSet: емкость, снимки, статистика,
+ * фильтр Блума, ограниченный размер, стратегии хэширования и т.д.
+ * Общие тесты Set лежат в HashSetTest и прогоняются для всех наследников,
+ * а эти - один раз.
+ */
+public class HashSetFeaturesTest {
+    private Random random = new Random(1720557871);
+
+    @Test
+    public void capacityTest() {
+        HashSet<Integer> set = new HashSet<>(10000);
+        int capacity = set.capacity();
+        for (int i = 0; i < 10000; i++) set.add(i);
+        assertTrue(set.capacity() == capacity);
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertTrue(set.capacity() == capacity);
+        assertFalse(set.contains(5));
+
+        for (int i = 0; i < 10; i++) set.add(i);
+        set.trimToSize();
+        assertTrue(set.capacity() < capacity);
+        for (int i = 0; i < 10; i++) assertTrue(set.contains(i));
+
+        set.ensureCapacity(10000);
+        assertTrue(set.capacity() == capacity);
+        assertTrue(set.size() == 10);
+
+        HashSet<String> copy = new HashSet<>(Arrays.asList("a", "b", "c", "a"));
+        assertTrue(copy.size() == 3);
+        assertTrue(new HashSet<String>(0, 0.9).add("x"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongCapacityTest() {
+        new HashSet<String>(-1);
+    }
+
+    @Test
+    public void setAlgebraTest() {
+        HashSet<Integer> a = new HashSet<>();
+        HashSet<Integer> b = new HashSet<>();
+        for (int i = 0; i < 1000; i++) a.add(i);
+        for (int i = 900; i < 1100; i++) b.add(i);
+        Set<Integer> c = new java.util.HashSet<>(b);
+
+        assertTrue(a.intersectionSize(b) == 100);
+        assertTrue(b.intersectionSize(a) == 100);
+        assertTrue(a.intersectionSize(c) == 100);
+        assertEquals(100.0 / 1100, a.jaccard(b), 1e-9);
+        assertEquals(1.0, new HashSet<Integer>().jaccard(new HashSet<Integer>()), 0);
+
+        Set<Integer> union = a.union(b);
+        Set<Integer> intersection = a.intersection(c);
+        Set<Integer> difference = a.difference(b);
+        assertTrue(union.size() == 1100);
+        assertTrue(intersection.size() == 100);
+        assertTrue(difference.size() == 900);
+        assertTrue(union.contains(1050) && !union.contains(1100));
+        assertTrue(intersection.contains(950) && !intersection.contains(50));
+        assertTrue(difference.contains(50) && !difference.contains(950));
+
+        Set<Integer> expected = new java.util.HashSet<>();
+        for (int i = 900; i < 1000; i++) expected.add(i);
+        assertEquals(expected, new java.util.HashSet<>(intersection));
+        assertEquals(expected, new java.util.HashSet<>(b.intersection(a)));
+        assertTrue(new java.util.HashSet<>(union).size() == 1100);
+        assertTrue(new java.util.HashSet<>(difference).size() == 900);
+
+        //представления видят изменения сетов
+        b.add(5);
+        assertTrue(intersection.size() == 100);
+        assertTrue(a.intersection(b).size() == 101);
+        assertTrue(difference.size() == 899);
+        try {
+            union.add(2000);
+            fail();
+        } catch (UnsupportedOperationException e) {
+        //представление только для чтения
+        }
+    }
+
+    @Test
+    public void snapshotTest() throws IOException {
+        HashSet<String> set = new HashSet<>();
+        for (int i = 0; i < 10000; i++) set.add("key" + i);
+        for (int i = 0; i < 10000; i += 3) set.remove("key" + i);
+        set.add("Привет");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(bytes, HashSet.Codec.STRING);
+
+        HashSet<String> copy = HashSet.readFrom(new ByteArrayInputStream(bytes.toByteArray()), HashSet.Codec.STRING);
+        assertTrue(copy.capacity() == set.capacity());
+        assertTrue(copy.equals(set));
+        assertTrue(copy.contains("Привет"));
+        assertFalse(copy.contains("key0"));
+        assertTrue(copy.add("key0"));
+        assertTrue(copy.remove("key1"));
+
+        ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+        copy.writeTo(Channels.newChannel(channelBytes), HashSet.Codec.STRING);
+        HashSet<String> second = HashSet.readFrom(
+                Channels.newChannel(new ByteArrayInputStream(channelBytes.toByteArray())), HashSet.Codec.STRING);
+        assertTrue(second.equals(copy));
+    }
+
+    @Test
+    public void snapshotHashChangedTest() throws IOException {
+        /**
+         * Объект с хэш-кодом по умолчанию: после загрузки у него
+         * другой хэш-код, и сет раскладывается заново
+         */
+        HashSet.Codec<Object> codec = new HashSet.Codec<Object>() {
+            @Override
+            public void write(Object value, DataOutput out) {
+            }
+
+            @Override
+            public Object read(DataInput in) {
+                return new Object();
+            }
+        };
+        HashSet<Object> set = new HashSet<>();
+        for (int i = 0; i < 1000; i++) set.add(new Object());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(bytes, codec);
+        HashSet<Object> copy = HashSet.readFrom(new ByteArrayInputStream(bytes.toByteArray()), codec);
+        assertTrue(copy.size() == 1000);
+        for (Object o : copy) assertTrue(copy.contains(o));
+    }
+
+    /**
+     * После снимка в потоке и в файле могут идти другие данные,
+     * readFrom не должен их съедать
+     */
+    @Test
+    public void snapshotTrailingDataTest() throws IOException {
+        HashSet<Integer> set = new HashSet<>();
+        for (int i = 0; i < 100000; i++) set.add(i);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(bytes, HashSet.Codec.INTEGER);
+        new DataOutputStream(bytes).writeInt(42);
+        InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        assertEquals(set, HashSet.readFrom(in, HashSet.Codec.INTEGER));
+        assertEquals(42, new DataInputStream(in).readInt());
+
+        Path file = Files.createTempFile("snapshot", ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            set.writeTo(channel, HashSet.Codec.INTEGER);
+            long end = channel.position();
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            channel.position(0);
+            assertEquals(set, HashSet.readFrom(channel, HashSet.Codec.INTEGER));
+            assertEquals(end, channel.position());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Две записи снимка на одну ячейку: живая поверх живой
+     * и живая поверх удаленной. Заголовок занимает 36 байт.
+     */
+    @Test
+    public void snapshotDuplicateIndexTest() throws IOException {
+        HashSet<Integer> set = new HashSet<>();
+        set.add(1);
+        set.add(2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(bytes, HashSet.Codec.INTEGER);
+        ByteBuffer live = ByteBuffer.wrap(bytes.toByteArray());
+        live.putInt(48, live.getInt(36));
+        try {
+            HashSet.readFrom(new ByteArrayInputStream(live.array()), HashSet.Codec.INTEGER);
+            fail();
+        } catch (IOException e) {
+        //вторая запись на занятую ячейку
+        }
+
+        set.remove(2);
+        bytes.reset();
+        set.writeTo(bytes, HashSet.Codec.INTEGER);
+        ByteBuffer deleted = ByteBuffer.wrap(bytes.toByteArray());
+        deleted.putInt(40, deleted.getInt(36));
+        try {
+            HashSet.readFrom(new ByteArrayInputStream(deleted.array()), HashSet.Codec.INTEGER);
+            fail();
+        } catch (IOException e) {
+        //живой элемент на месте удаленного
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void snapshotNullCodecTest() throws IOException {
+        HashSet<Integer> set = new HashSet<>();
+        set.add(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(bytes, HashSet.Codec.INTEGER);
+        HashSet.readFrom(new ByteArrayInputStream(bytes.toByteArray()), new HashSet.Codec<Integer>() {
+            @Override
+            public void write(Integer value, DataOutput out) {
+            }
+
+            @Override
+            public Integer read(DataInput in) {
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongSnapshotTest() throws IOException {
+        HashSet.readFrom(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}), HashSet.Codec.INTEGER);
+    }
+
+    @Test
+    public void statsTest() throws JMException {
+        HashSet<Integer> set = new HashSet<>();
+        set.add(-1);
+        assertFalse(set.isStatsEnabled());
+        assertTrue(set.stats().getContainsProbes().length == 0);
+
+        set.setStatsEnabled(true);
+        for (int i = 0; i < 1000; i++) set.add(i);
+        for (int i = 0; i < 2000; i++) set.contains(i);
+        for (int i = 0; i < 100; i++) set.remove(i);
+        HashSetStats stats = set.stats();
+        assertTrue(stats.getSize() == 901);
+        assertTrue(stats.getTombstones() == 100);
+        assertTrue(stats.getCapacity() == set.capacity());
+        assertTrue(stats.getResizeCount() == 4);
+        assertTrue(stats.getRehashNanos() > 0);
+        assertTrue(stats.getLargestCluster() >= 1);
+        assertTrue(Arrays.stream(stats.getAddProbes()).sum() == 1000);
+        assertTrue(Arrays.stream(stats.getContainsProbes()).sum() == 2000);
+        assertTrue(Arrays.stream(stats.getRemoveProbes()).sum() == 100);
+        assertTrue(stats.getContainsMeanProbes() >= 1);
+        assertEquals(901.0 / set.capacity(), stats.getLoadFactor(), 1e-9);
+
+        ObjectName name = set.registerMBean("statsTest");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(901, server.getAttribute(name, "Size"));
+            assertEquals(100, server.getAttribute(name, "Tombstones"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        set.setStatsEnabled(false);
+        assertTrue(set.stats().getResizeCount() == 0);
+    }
+
+    @Test
+    public void bloomFilterTest() {
+        HashSet<Integer> set = new HashSet<>();
+        for (int i = 0; i < 500; i++) set.add(i);
+        set.setBloomFilterEnabled(true);
+        set.setStatsEnabled(true);
+        assertTrue(set.isBloomFilterEnabled());
+        for (int i = 500; i < 100000; i++) set.add(i);
+        for (int i = 0; i < 100000; i++) assertTrue(set.contains(i));
+        for (int i = 100000; i < 200000; i++) assertFalse(set.contains(i));
+        HashSetStats stats = set.stats();
+        assertTrue(stats.getBloomFalsePositiveRate() < 0.05);
+        assertEquals(stats.getBloomFalsePositiveRate(), stats.getBloomExpectedFalsePositiveRate(), 0.01);
+
+        for (int i = 0; i < 50000; i++) set.remove(i);
+        for (int i = 0; i < 50000; i++) assertFalse(set.contains(i));
+        for (int i = 50000; i < 100000; i++) assertTrue(set.contains(i));
+        set.retainAll(Collections.singleton(99999));
+        assertTrue(set.size() == 1 && set.contains(99999));
+        assertTrue(set.stats().getBloomExpectedFalsePositiveRate() < 1e-6);
+        set.clear();
+        assertFalse(set.contains(99999));
+        set.add(7);
+        assertTrue(set.contains(7));
+
+        set.setBloomFilterEnabled(false);
+        assertTrue(Double.isNaN(set.stats().getBloomFalsePositiveRate()));
+        assertTrue(set.contains(7));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bloomFilterIncrementalTest() {
+        new HashSet<Integer>(true).setBloomFilterEnabled(true);
+    }
+
+    @Test
+    public void boundedTest() {
+        HashSet<Integer> set = HashSet.bounded(1000);
+        set.setStatsEnabled(true);
+        int capacity = set.capacity();
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(set.add(i));
+            assertTrue(set.contains(i));
+            assertEquals(Math.min(i + 1, 1000), set.size());
+        }
+        assertEquals(1000, set.limit());
+        assertEquals(capacity, set.capacity());
+        assertEquals(99000, set.stats().getEvictionCount());
+        int found = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (set.contains(i)) found++;
+        }
+        assertEquals(1000, found);
+        assertEquals(1000, set.toArray().length);
+
+        for (int i = 0; i < 100000; i++) {
+            set.remove(i);
+            set.add(-i);
+        }
+        assertEquals(1000, set.size());
+        assertEquals(capacity, set.capacity());
+        set.clear();
+        assertTrue(set.add(1) && set.contains(1));
+        assertEquals(0, new HashSet<Integer>().limit());
+    }
+
+    /**
+     * Элементы, к которым обращаются между вытеснениями,
+     * остаются в сете, а вытесняются остальные
+     */
+    @Test
+    public void boundedClockTest() {
+        HashSet<Integer> set = HashSet.bounded(1000);
+        for (int i = 0; i < 1000; i++) set.add(i);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 100; i++) set.add(1000 + round * 100 + i);
+            /**
+             * В первом круге стрелка снимает биты со всех начальных
+             * элементов, и часть горячих может вытесниться до обращения
+             */
+            for (int hot = 0; hot < 100; hot++) {
+                if (!set.contains(hot)) {
+                    assertEquals(0, round);
+                    set.add(hot);
+                }
+            }
+            for (int hot = 100; hot < 200; hot++) assertFalse(set.add(hot) && round > 0);
+        }
+        for (int cold = 200; cold < 1000; cold++) assertFalse(set.contains(cold));
+        assertEquals(1000, set.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundedLimitTest() {
+        HashSet.bounded(0);
+    }
+
+    @Test
+    public void snapshotViewTest() {
+        HashSet<Integer> set = new HashSet<>();
+        Set<Integer> expected = new java.util.HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            set.add(i);
+            expected.add(i);
+        }
+        Set<Integer> first = set.snapshot();
+        assertSame(first, set.snapshot());
+        for (int i = 0; i < 10000; i += 2) set.remove(i);
+        Set<Integer> second = set.snapshot();
+        assertNotSame(first, second);
+        Iterator<Integer> iterator = set.iterator();
+        iterator.next();
+        iterator.remove();
+        set.removeIf(i -> i % 3 == 0);
+        Set<Integer> third = set.snapshot();
+        Set<Integer> thirdExpected = new java.util.HashSet<>(set);
+        for (int i = 10000; i < 100000; i++) set.add(i);
+        set.clear();
+        set.add(-1);
+
+        assertEquals(expected, first);
+        assertEquals(expected.hashCode(), first.hashCode());
+        assertEquals(5000, second.size());
+        for (int i = -1; i < 10001; i++) assertEquals(i >= 0 && i < 10000 && i % 2 == 1, second.contains(i));
+        assertEquals(thirdExpected, third);
+        assertEquals(thirdExpected, new java.util.HashSet<>(third));
+        assertEquals(1, set.size());
+        assertTrue(set.snapshot().contains(-1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotViewImmutableTest() {
+        HashSet<Integer> set = new HashSet<>();
+        set.add(1);
+        set.snapshot().add(2);
+    }
+
+    @Test
+    public void snapshotViewStrategyTest() {
+        HashSet<byte[]> set = new HashSet<>(HashSet.HashingStrategy.BYTE_ARRAY);
+        for (int i = 0; i < 1000; i++) set.add(String.valueOf(i).getBytes());
+        Set<byte[]> snapshot = set.snapshot();
+        set.remove("42".getBytes());
+        assertTrue(snapshot.contains("42".getBytes()));
+        assertEquals(1000, snapshot.size());
+        assertEquals(set.hashCode() + Arrays.hashCode("42".getBytes()), snapshot.hashCode());
+
+        HashSet<Integer> bounded = HashSet.bounded(100);
+        for (int i = 0; i < 100; i++) bounded.add(i);
+        Set<Integer> full = bounded.snapshot();
+        for (int i = 100; i < 1000; i++) bounded.add(i);
+        for (int i = 0; i < 1000; i++) assertEquals(i < 100, full.contains(i));
+    }
+
+    /**
+     * Читатели проверяют снимок, пока сет меняют: они должны видеть
+     * ровно элементы на момент снимка
+     */
+    @Test
+    public void snapshotViewConcurrentTest() throws Exception {
+        HashSet<Integer> set = new HashSet<>(200000);
+        for (int i = 0; i < 50000; i++) set.add(i);
+        Set<Integer> snapshot = set.snapshot();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                for (int round = 0; round < 5; round++) {
+                    for (int i = -1000; i < 51000; i++) {
+                        if (snapshot.contains(i) != (i >= 0 && i < 50000)) failed.set(true);
+                    }
+                    int count = 0;
+                    for (int ignored : snapshot) count++;
+                    if (count != 50000) failed.set(true);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        Random random = new Random(1720557871);
+        for (int i = 0; i < 300000; i++) {
+            int key = random.nextInt(100000) - 1000;
+            if (random.nextBoolean()) set.add(key);
+            else set.remove(key);
+            if (i % 50000 == 0) set.snapshot();
+        }
+        for (Thread reader : readers) reader.join();
+        assertFalse(failed.get());
+        assertEquals(50000, snapshot.size());
+    }
+
+    @Test
+    public void floodTest() {
+        List<String> keys = FloodProbeHistogram.collidingStrings(12);
+        HashSet<String> set = new HashSet<>();
+        set.setKeyedHashFallback(java.util.function.Function.identity());
+        for (String key : keys) assertTrue(set.add(key));
+        assertTrue(set.isKeyedHash());
+        assertTrue(set.hitProbeLengths().length < 64);
+        for (String key : keys) assertTrue(set.contains(key));
+        assertFalse(set.contains("AaAa"));
+        assertFalse(set.contains(42));
+        assertTrue(set.remove(keys.get(7)));
+        assertFalse(set.contains(keys.get(7)));
+
+        HashSet<String> copy = new HashSet<>();
+        assertTrue(copy.addAll(set));
+        assertTrue(copy.equals(set));
+        assertTrue(copy.intersectionSize(set) == keys.size() - 1);
+        assertTrue(set.containsAll(copy));
+
+        set.setKeyedHashFallback(null);
+        assertFalse(set.isKeyedHash());
+        for (String key : keys) assertEquals(key != keys.get(7), set.contains(key));
+
+        //без SipHash все работает, но цепочка остается длинной
+        HashSet<String> plain = new HashSet<>();
+        plain.addAll(keys);
+        assertFalse(plain.isKeyedHash());
+        assertTrue(plain.hitProbeLengths().length >= keys.size());
+        for (String key : keys) assertTrue(plain.contains(key));
+    }
+
+    @Test
+    public void drainToTest() {
+        HashSet<Integer> set = new HashSet<>();
+        for (int i = 0; i < 1000; i++) set.add(i);
+        for (int i = 0; i < 500; i++) set.remove(i);
+        List<Integer> out = new ArrayList<>();
+        assertEquals(500, set.drainTo(out));
+        assertTrue(set.isEmpty());
+        Collections.sort(out);
+        for (int i = 0; i < 500; i++) assertEquals(500 + i, (int) out.get(i));
+        assertEquals(0, set.drainTo(out));
+        assertTrue(set.add(1));
+    }
+
+    @Test
+    public void byteArrayStrategyTest() throws IOException {
+        HashSet<byte[]> set = new HashSet<>(HashSet.HashingStrategy.BYTE_ARRAY);
+        for (int i = 0; i < 1000; i++) assertTrue(set.add(String.valueOf(i).getBytes()));
+        for (int i = 0; i < 1000; i++) assertFalse(set.add(String.valueOf(i).getBytes()));
+        assertTrue(set.size() == 1000);
+        assertTrue(set.contains("42".getBytes()));
+        assertFalse(set.contains("1000".getBytes()));
+        assertTrue(set.remove("42".getBytes()));
+        assertFalse(set.contains("42".getBytes()));
+
+        HashSet<byte[]> copy = new HashSet<>(HashSet.HashingStrategy.BYTE_ARRAY);
+        for (int i = 0; i < 1000; i++) copy.add(String.valueOf(i).getBytes());
+        copy.remove("42".getBytes());
+        assertEquals(set, copy);
+        assertEquals(set.hashCode(), copy.hashCode());
+        assertTrue(set.intersectionSize(copy) == 999);
+
+        //в обычном сете два разных массива "x", а для BYTE_ARRAY это один элемент
+        HashSet<byte[]> single = new HashSet<>(HashSet.HashingStrategy.BYTE_ARRAY);
+        single.add("x".getBytes());
+        HashSet<byte[]> identity = new HashSet<>();
+        identity.add("x".getBytes());
+        identity.add("x".getBytes());
+        assertTrue(single.containsAll(new ArrayList<>(identity)));
+        assertTrue(single.containsAll(identity));
+
+        HashSet.Codec<byte[]> codec = new HashSet.Codec<byte[]>() {
+            @Override
+            public void write(byte[] value, DataOutput out) throws IOException {
+                out.writeInt(value.length);
+                out.write(value);
+            }
+
+            @Override
+            public byte[] read(DataInput in) throws IOException {
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                return value;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        set.writeTo(out, codec);
+        HashSet<byte[]> read = HashSet.readFrom(new ByteArrayInputStream(out.toByteArray()), codec,
+                HashSet.HashingStrategy.BYTE_ARRAY);
+        assertEquals(set, read);
+
+        FrozenHashSet<byte[]> frozen = set.freeze();
+        assertTrue(frozen.size() == 999);
+        assertTrue(frozen.contains("7".getBytes()));
+        assertFalse(frozen.contains("42".getBytes()));
+    }
+
+    @Test
+    public void charSequenceStrategyTest() {
+        HashSet<CharSequence> set = new HashSet<>(HashSet.HashingStrategy.CHAR_SEQUENCE);
+        assertTrue(set.add("https://example.com/item/1"));
+        assertFalse(set.add(new StringBuilder("https://example.com/item/1")));
+        assertTrue(set.contains(new StringBuilder("https://example.com/").append("item/1")));
+        assertFalse(set.contains(new StringBuilder("https://example.com/item/2")));
+        assertEquals(HashSet.HashingStrategy.CHAR_SEQUENCE.hashCode(new StringBuilder("abc")), "abc".hashCode());
+    }
+
+    /**
+     * У сетов с разными стратегиями разное равенство: быстрые пути
+     * HashSet-HashSet должны давать то же, что и обход обычной коллекции
+     */
+    @Test
+    public void mixedStrategyTest() {
+        HashSet<byte[]> strict = new HashSet<>(HashSet.HashingStrategy.BYTE_ARRAY);
+        HashSet<byte[]> plain = new HashSet<>();
+        HashSet<byte[]> copies = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            byte[] key = String.valueOf(i).getBytes();
+            strict.add(key);
+            if (i < 500) plain.add(key);
+            copies.add(String.valueOf(i).getBytes());
+            copies.add(String.valueOf(i).getBytes());
+        }
+        for (int i = 250; i < 1500; i++) plain.add(String.valueOf(i).getBytes());
+
+        List<HashSet<byte[]>> sets = Arrays.asList(strict, plain, copies);
+        for (HashSet<byte[]> a : sets) {
+            for (HashSet<byte[]> b : sets) {
+                assertEquals(a.containsAll(new ArrayList<>(b)), a.containsAll(b));
+                assertEquals(a.intersectionSize(Collections.unmodifiableSet(b)), a.intersectionSize(b));
+            }
+        }
+        assertTrue(strict.containsAll(copies));
+        assertFalse(copies.containsAll(strict));
+        assertFalse(strict.containsAll(plain));
+        assertTrue(strict.intersectionSize(plain) == 500);
+        assertTrue(plain.intersectionSize(strict) == 500);
+        assertTrue(strict.intersectionSize(copies) == 0);
+    }
+
+    /**
+     * Сначала сравниваются сохраненные хэш-коды, поэтому на успешный поиск
+     * приходится около одного вызова equals, а на неудачный - почти ни одного
+     */
+    @Test
+    public void equalsPerLookupTest() {
+        int[] calls = new int[1];
+        HashSet.HashingStrategy<String> counting = new HashSet.HashingStrategy<String>() {
+            @Override
+            public int hashCode(String e) {
+                return e.hashCode();
+            }
+
+            @Override
+            public boolean equals(String a, String b) {
+                calls[0]++;
+                return a.equals(b);
+            }
+        };
+        HashSet<String> set = new HashSet<>(counting);
+        for (int i = 0; i < 100000; i++) set.add("https://example.com/catalog/item?id=" + i);
+        calls[0] = 0;
+        for (int i = 0; i < 100000; i++) assertTrue(set.contains("https://example.com/catalog/item?id=" + i));
+        assertTrue(calls[0] <= 100100);
+        calls[0] = 0;
+        for (int i = 100000; i < 200000; i++) assertFalse(set.contains("https://example.com/catalog/item?id=" + i));
+        assertTrue(calls[0] <= 100);
+    }
+
+    @Test
+    public void addBatchTest() {
+        HashSet<Integer> set = new HashSet<>();
+        Set<Integer> expected = new java.util.HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            set.add(i * 3);
+            expected.add(i * 3);
+        }
+        Integer[] keys = new Integer[100010];
+        for (int i = 0; i < keys.length; i++) keys[i] = i % 7 == 0 ? null : random.nextInt(50000);
+        long[] added = set.addBatch(keys, 10, 100000);
+        assertTrue(added.length == (100000 + 63) / 64);
+        Set<Integer> seen = new java.util.HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            Integer key = keys[10 + i];
+            boolean isNew = key != null && !expected.contains(key) && seen.add(key);
+            assertEquals(isNew, (added[i >>> 6] & 1L << i) != 0);
+        }
+        expected.addAll(seen);
+        assertEquals(expected, new java.util.HashSet<>(set));
+        assertTrue(set.size() == expected.size());
+
+        assertTrue(set.addBatch(keys, 0, 0).length == 0);
+        added = set.addBatch(new Integer[]{-1, -1, 0}, 0, 3);
+        assertEquals(1L, added[0]);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void addBatchBoundsTest() {
+        new HashSet<Integer>().addBatch(new Integer[10], 5, 6);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void forEachModificationTest() {
+        HashSet<Integer> set = new HashSet<>();
+        for (int i = 0; i < 100; i++) set.add(i);
+        set.forEach(i -> set.add(i + 1000));
+    }
+
+    @Test
+    public void failFastTest() {
+        HashSet<String> set = new HashSet<>();
+        set.addAll(Arrays.asList("a", "b", "c"));
+        Iterator<String> iterator = set.iterator();
+        iterator.next();
+        set.remove("c");
+        try {
+            iterator.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+        //итератор заметил изменение сета
+        }
+        iterator = set.iterator();
+        try {
+            iterator.remove();
+            fail();
+        } catch (IllegalStateException e) {
+        //remove() до next()
+        }
+    }
+
+    @Test
+    public void spliteratorTest() {
+        HashSet<Integer> set = new HashSet<>();
+        for (int i = 0; i < 100000; i++) set.add(i);
+        Spliterator<Integer> spliterator = set.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertTrue(spliterator.hasCharacteristics(Spliterator.DISTINCT));
+        assertTrue(spliterator.getExactSizeIfKnown() == 100000);
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+        long sum = set.parallelStream().mapToLong(Integer::longValue).sum();
+        assertTrue(sum == 99999L * 100000 / 2);
+        assertTrue(set.stream().filter(i -> i % 2 == 0).count() == 50000);
+    }
+}
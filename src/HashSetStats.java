@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * Снимок статистики HashSet на момент вызова stats(). Счетчики операций
+ * (гистограммы, количество увеличений, время rehash) копятся, только пока
+ * статистика включена, остальное считается по массиву при создании снимка.
+ */
+public final class HashSetStats implements HashSetStatsMBean {
+    private final int size;
+    private final int capacity;
+    private final int tombstones;
+    private final long resizeCount;
+    private final long rehashNanos;
+    private final int largestCluster;
+    private final long[] containsProbes;
+    private final long[] addProbes;
+    private final long[] removeProbes;
+    private final double bloomFalsePositiveRate;
+    private final double bloomExpectedFalsePositiveRate;
+    private final long evictionCount;
+
+    HashSetStats(int size, int capacity, int tombstones, long resizeCount, long rehashNanos, int largestCluster,
+                 long[] containsProbes, long[] addProbes, long[] removeProbes,
+                 double bloomFalsePositiveRate, double bloomExpectedFalsePositiveRate, long evictionCount) {
+        this.size = size;
+        this.capacity = capacity;
+        this.tombstones = tombstones;
+        this.resizeCount = resizeCount;
+        this.rehashNanos = rehashNanos;
+        this.largestCluster = largestCluster;
+        this.containsProbes = containsProbes;
+        this.addProbes = addProbes;
+        this.removeProbes = removeProbes;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.bloomExpectedFalsePositiveRate = bloomExpectedFalsePositiveRate;
+        this.evictionCount = evictionCount;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getTombstones() {
+        return tombstones;
+    }
+
+    @Override
+    public double getLoadFactor() {
+        return (double) size / capacity;
+    }
+
+    @Override
+    public double getFullness() {
+        return (double) (size + tombstones) / capacity;
+    }
+
+    @Override
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    @Override
+    public long getRehashNanos() {
+        return rehashNanos;
+    }
+
+    @Override
+    public int getLargestCluster() {
+        return largestCluster;
+    }
+
+    @Override
+    public long[] getContainsProbes() {
+        return containsProbes.clone();
+    }
+
+    @Override
+    public long[] getAddProbes() {
+        return addProbes.clone();
+    }
+
+    @Override
+    public long[] getRemoveProbes() {
+        return removeProbes.clone();
+    }
+
+    @Override
+    public double getContainsMeanProbes() {
+        return mean(containsProbes);
+    }
+
+    @Override
+    public double getAddMeanProbes() {
+        return mean(addProbes);
+    }
+
+    @Override
+    public double getRemoveMeanProbes() {
+        return mean(removeProbes);
+    }
+
+    @Override
+    public double getBloomFalsePositiveRate() {
+        return bloomFalsePositiveRate;
+    }
+
+    @Override
+    public double getBloomExpectedFalsePositiveRate() {
+        return bloomExpectedFalsePositiveRate;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private static double mean(long[] histogram) {
+        long count = 0;
+        long sum = 0;
+        for (int k = 0; k < histogram.length; k++) {
+            count += histogram[k];
+            sum += histogram[k] * (k + 1);
+        }
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "HashSetStats{size=" + size + ", capacity=" + capacity + ", tombstones=" + tombstones
+                + ", loadFactor=" + getLoadFactor() + ", resizeCount=" + resizeCount
+                + ", rehashNanos=" + rehashNanos + ", largestCluster=" + largestCluster
+                + ", containsProbes=" + Arrays.toString(containsProbes)
+                + ", addProbes=" + Arrays.toString(addProbes)
+                + ", removeProbes=" + Arrays.toString(removeProbes)
+                + ", bloomFalsePositiveRate=" + bloomFalsePositiveRate
+                + ", bloomExpectedFalsePositiveRate=" + bloomExpectedFalsePositiveRate
+                + ", evictionCount=" + evictionCount + "}";
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Статистика HashSet для JMX. Гистограммы в том же виде, что и
+ * hitProbeLengths(): [k] - сколько операций проверили k + 1 ячейку.
+ */
+public interface HashSetStatsMBean {
+    int getSize();
+
+    int getCapacity();
+
+    int getTombstones();
+
+    /**
+     * Доля ячеек с живыми элементами
+     */
+    double getLoadFactor();
+
+    /**
+     * Доля занятых ячеек вместе с удаленными - именно она
+     * сравнивается с maxFullness
+     */
+    double getFullness();
+
+    long getResizeCount();
+
+    long getRehashNanos();
+
+    int getLargestCluster();
+
+    long[] getContainsProbes();
+
+    long[] getAddProbes();
+
+    long[] getRemoveProbes();
+
+    double getContainsMeanProbes();
+
+    double getAddMeanProbes();
+
+    double getRemoveMeanProbes();
+
+    /**
+     * Доля промахов contains, которые фильтр Блума пропустил до поиска
+     * в массиве, за время сбора статистики. NaN - если фильтр выключен
+     * или промахов еще не было.
+     */
+    double getBloomFalsePositiveRate();
+
+    /**
+     * Та же доля, оцененная по заполненности битов фильтра
+     */
+    double getBloomExpectedFalsePositiveRate();
+
+    /**
+     * Сколько элементов вытеснил ограниченный сет (HashSet.bounded)
+     */
+    long getEvictionCount();
+}
@@ -6,9 +6,17 @@ import java.util.*;
 import static org.junit.Assert.*;
 
 public class HashSetTest {
-    private HashSet<String> hashSet = new HashSet<>();
+    protected Set<String> hashSet = newSet();
     private Random random = new Random(1720557871);
 
+    /**
+     * Другие реализации Set прогоняют эти же тесты,
+     * переопределив этот метод в наследнике.
+     */
+    protected <E> Set<E> newSet() {
+        return new HashSet<>();
+    }
+
     @After
     public void after() {
         hashSet.clear();
@@ -71,6 +79,60 @@ public class HashSetTest {
         assertTrue(hashSet.contains("removed"));
     }
 
+    @Test
+    public void churnTest() {
+        /**
+         * Постоянно добавляем новые и удаляем старые элементы,
+         * живых при этом не больше 100. Удаленные ячейки не должны
+         * копиться и ломать поиск.
+         */
+        Deque<String> window = new ArrayDeque<>();
+        for (int i = 0; i < 500000; i++) {
+            String s = "session" + i;
+            assertTrue(hashSet.add(s));
+            window.addLast(s);
+            if (window.size() > 100) assertTrue(hashSet.remove(window.removeFirst()));
+        }
+        assertTrue(hashSet.size() == 100);
+        for (String s : window) assertTrue(hashSet.contains(s));
+        assertFalse(hashSet.contains("session0"));
+        assertFalse(hashSet.contains("session499899"));
+    }
+
+    @Test
+    public void bulkTest() {
+        /**
+         * Коллекции больше 2 * PARALLEL_CHUNK, чтобы массовые
+         * операции шли параллельно
+         */
+        Set<Integer> evens = newSet();
+        Set<Integer> all = newSet();
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            if (i % 2 == 0) evens.add(i);
+            list.add(i);
+        }
+        assertTrue(all.addAll(list));
+        assertFalse(all.addAll(evens));
+        assertTrue(all.size() == 100000);
+        assertTrue(all.containsAll(evens));
+        assertTrue(all.containsAll(list));
+        assertFalse(evens.containsAll(all));
+
+        Set<Integer> copy = newSet();
+        assertTrue(copy.addAll(all));
+        assertTrue(copy.retainAll(evens));
+        assertFalse(copy.retainAll(evens));
+        assertTrue(copy.equals(evens));
+
+        assertTrue(all.removeAll(evens));
+        assertTrue(all.size() == 50000);
+        for (int i = 0; i < 100000; i++) assertEquals(i % 2 == 1, all.contains(i));
+        assertTrue(all.retainAll(list.subList(0, 1000)));
+        assertTrue(all.size() == 500);
+        assertTrue(all.removeAll(all));
+        assertTrue(all.isEmpty());
+    }
 
     @Test
     public void sizeTest() {
@@ -121,6 +183,36 @@ public class HashSetTest {
         }
     }
 
+    @Test
+    public void typedToArrayTest() {
+        List<String> list = Arrays.asList("Convert", "me", "to", "array");
+        hashSet.addAll(list);
+        String[] array = hashSet.toArray(new String[0]);
+        assertEquals(new java.util.HashSet<>(list), new java.util.HashSet<>(Arrays.asList(array)));
+
+        String[] big = new String[10];
+        Arrays.fill(big, "x");
+        assertSame(big, hashSet.toArray(big));
+        assertNull(big[4]);
+        assertEquals("x", big[5]);
+        assertEquals(new java.util.HashSet<>(list), new java.util.HashSet<>(Arrays.asList(big).subList(0, 4)));
+    }
+
+    @Test
+    public void forEachRemoveIfTest() {
+        for (int i = 0; i < 1000; i++) hashSet.add("key" + i);
+        List<String> seen = new ArrayList<>();
+        hashSet.forEach(seen::add);
+        assertEquals(1000, seen.size());
+        assertEquals(hashSet, new HashSet<>(seen));
+
+        assertTrue(hashSet.removeIf(s -> s.endsWith("7")));
+        assertFalse(hashSet.removeIf(s -> s.endsWith("7")));
+        assertTrue(hashSet.size() == 900);
+        for (int i = 0; i < 1000; i++) assertEquals(i % 10 != 7, hashSet.contains("key" + i));
+        assertTrue(hashSet.add("key7"));
+    }
+
     @Test
     public void retainAllTest() {
         hashSet.addAll(Arrays.asList("Hello", "ladies", "and", "gentlemen"));
@@ -146,24 +238,35 @@ public class HashSetTest {
         assertArrayEquals(list.toArray(), secondList.toArray());
     }
 
+    @Test
+    public void iteratorRemoveTest() {
+        for (int i = 0; i < 1000; i++) hashSet.add("s" + i);
+        Iterator<String> iterator = hashSet.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().length() == 4) iterator.remove();
+        }
+        assertTrue(hashSet.size() == 100);
+        for (int i = 0; i < 1000; i++) assertEquals(i < 100, hashSet.contains("s" + i));
+    }
+
     @Test
     public void equalsTest() {
         List<String> list = new ArrayList<>(Arrays.asList("What", "is", "it", "?"));
         hashSet.addAll(list);
-        HashSet<String> secondHashSet = new HashSet<>();
+        Set<String> secondHashSet = newSet();
         Collections.reverse(list);
         secondHashSet.addAll(list);
         secondHashSet.addAll(list);
         assertTrue(hashSet.equals(secondHashSet));
         assertTrue(secondHashSet.equals(hashSet));
 
-        HashSet<String> thirdHashSet = new HashSet<>();
+        Set<String> thirdHashSet = newSet();
         list.add("and");
         thirdHashSet.addAll(list);
         assertFalse(hashSet.equals(thirdHashSet));
         assertFalse(thirdHashSet.equals(hashSet));
 
-        HashSet<Integer> fourthHashSet = new HashSet<>();
+        Set<Integer> fourthHashSet = newSet();
         fourthHashSet.add(3);
         assertFalse(hashSet.equals(fourthHashSet));
         assertFalse(fourthHashSet.equals(hashSet));
@@ -171,7 +274,7 @@ public class HashSetTest {
         list.remove("and");
 
         Random random = new Random();
-        HashSet<String> randomSet = new HashSet<>();
+        Set<String> randomSet = newSet();
         List<String> randomList = new ArrayList<>();
         for (int i = 0; i < 10000; i++) {
             randomList.add(String.valueOf(random.nextLong()));
@@ -188,11 +291,11 @@ public class HashSetTest {
         List<String> list = new ArrayList<>(Arrays.asList("4", "1", "fs", "32sd", ",sald"));
         hashSet.addAll(list);
 
-        HashSet<String> secondHashSet = new HashSet<>();
+        Set<String> secondHashSet = newSet();
         Collections.reverse(list);
         secondHashSet.addAll(list);
 
-        HashSet<String> thirdHashSet = new HashSet<>();
+        Set<String> thirdHashSet = newSet();
         Collections.shuffle(list);
         thirdHashSet.addAll(list);
 
@@ -0,0 +1,39 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IncrementalHashSetTest extends HashSetTest {
+    @Override
+    protected <E> Set<E> newSet() {
+        return new HashSet<>(true);
+    }
+
+    @Test
+    public void duringMigrationTest() {
+        /**
+         * Сразу после увеличения массива большая часть элементов еще
+         * лежит в старом массиве: их должно быть видно, они не должны
+         * добавляться повторно и должны удаляться
+         */
+        Set<Integer> set = newSet();
+        Set<Integer> expected = new java.util.HashSet<>();
+        Random random = new Random(1720557871);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(100000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expected.remove(key), set.remove(key));
+                    break;
+                case 1:
+                    assertEquals(expected.contains(key), set.contains(key));
+                    break;
+                default:
+                    assertEquals(expected.add(key), set.add(key));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        assertEquals(expected, new java.util.HashSet<>(set));
+    }
+}
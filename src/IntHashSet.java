@@ -0,0 +1,293 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Хэш-сет для примитивных int. Устроен так же, как HashSet -
+ * открытая адресация с линейным пробированием, но ключи лежат
+ * прямо в массиве int[], без упаковки в Integer, поэтому add(int)
+ * и contains(int) ничего не создают в куче.
+ *
+ * Два значения ключа зарезервированы под метки ячеек:
+ * FREE_KEY - пустая ячейка, REMOVED_KEY - удаленный элемент.
+ * Если сами эти числа добавляют в сет, то они хранятся не в массиве,
+ * а во флагах hasFreeKey и hasRemovedKey.
+ */
+public class IntHashSet {
+    /**
+     * Максимально допустимая заполненность массива.
+     * Удаленные ячейки тоже считаются занятыми.
+     */
+    private static final double MAX_FULLNESS = 0.7;
+    private static final int INITIAL_SIZE = 128;
+    /**
+     * Размер массива всегда степень 2, чтобы вместо остатка
+     * от деления брать маску. Больше 2^30 степень 2 в int не влезет.
+     */
+    private static final int MAX_SIZE = 1 << 30;
+    private static final int FREE_KEY = 0;
+    private static final int REMOVED_KEY = Integer.MIN_VALUE;
+
+    private int[] array;
+    private int mask;
+    /**
+     * Количество элементов в массиве, флаги сюда не входят
+     */
+    private int realSize;
+    /**
+     * Количество удаленных ячеек (REMOVED_KEY) в массиве
+     */
+    private int removedSize;
+    private boolean hasFreeKey;
+    private boolean hasRemovedKey;
+
+    IntHashSet() {
+        array = new int[INITIAL_SIZE];
+        mask = INITIAL_SIZE - 1;
+    }
+
+    public int size() {
+        return realSize + (hasFreeKey ? 1 : 0) + (hasRemovedKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(int key) {
+        if (key == FREE_KEY) return hasFreeKey;
+        if (key == REMOVED_KEY) return hasRemovedKey;
+        int index = hash(key);
+        for (int i = 0; i < array.length; i++) {
+            int k = array[index];
+            if (k == key) return true;
+            if (k == FREE_KEY) return false;
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Проходим по цепочке один раз: если встретили сам ключ, то он уже есть,
+     * если дошли до пустой ячейки, то добавляем в первую удаленную ячейку
+     * по пути, а если таких не было, то в эту пустую. Если пустая ячейка
+     * переполнит массив, то сначала делаем resize() и ищем место заново.
+     */
+    public boolean add(int key) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey) return false;
+            return hasFreeKey = true;
+        }
+        if (key == REMOVED_KEY) {
+            if (hasRemovedKey) return false;
+            return hasRemovedKey = true;
+        }
+        int index = whereToAdd(key);
+        if (index < 0) return false;
+        if (array[index] == REMOVED_KEY) {
+            removedSize--;
+        } else if ((double) (realSize + removedSize + 1) / array.length > MAX_FULLNESS) {
+            resize();
+            index = whereToAdd(key);
+        }
+        array[index] = key;
+        realSize++;
+        return true;
+    }
+
+    /**
+     * Возвращает индекс, куда можно положить key,
+     * или -1, если key уже есть в массиве.
+     */
+    private int whereToAdd(int key) {
+        int index = hash(key);
+        int firstRemoved = -1;
+        for (int i = 0; i < array.length; i++) {
+            int k = array[index];
+            if (k == key) return -1;
+            if (k == FREE_KEY) return firstRemoved == -1 ? index : firstRemoved;
+            if (k == REMOVED_KEY && firstRemoved == -1) firstRemoved = index;
+            index = (index + 1) & mask;
+        }
+        return firstRemoved;
+    }
+
+    public boolean remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) return false;
+            hasFreeKey = false;
+            return true;
+        }
+        if (key == REMOVED_KEY) {
+            if (!hasRemovedKey) return false;
+            hasRemovedKey = false;
+            return true;
+        }
+        int index = hash(key);
+        for (int i = 0; i < array.length; i++) {
+            int k = array[index];
+            if (k == FREE_KEY) return false;
+            if (k == key) {
+                array[index] = REMOVED_KEY;
+                realSize--;
+                removedSize++;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Если массив забит в основном удаленными ячейками, то размер не меняем,
+     * а просто раскладываем элементы заново, удаленные при этом исчезают.
+     * Иначе увеличиваем массив в 2 раза. Если он уже MAX_SIZE, то места
+     * больше нет: rehash того же размера ничего бы не освободил и
+     * повторялся бы на каждом add, поэтому бросаем IllegalStateException.
+     */
+    private void resize() {
+        int newSize = array.length;
+        if (realSize >= removedSize) {
+            if (newSize >= MAX_SIZE) throw new IllegalStateException("IntHashSet is full: " + realSize + " keys");
+            newSize *= 2;
+        }
+        rehash(newSize);
+    }
+
+    private void rehash(int newSize) {
+        int[] oldArray = array;
+        array = new int[newSize];
+        mask = newSize - 1;
+        removedSize = 0;
+        for (int k : oldArray) {
+            if (k != FREE_KEY && k != REMOVED_KEY) {
+                int index = hash(k);
+                while (array[index] != FREE_KEY) index = (index + 1) & mask;
+                array[index] = k;
+            }
+        }
+    }
+
+    /**
+     * Фибоначчиево хэширование: умножаем на 2^32 / (золотое сечение),
+     * а затем подмешиваем старшие биты в младшие, так как маска берет
+     * именно младшие. Подряд идущие id так раскидываются по всему массиву.
+     */
+    private int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public void clear() {
+        Arrays.fill(array, FREE_KEY);
+        realSize = 0;
+        removedSize = 0;
+        hasFreeKey = false;
+        hasRemovedKey = false;
+    }
+
+    /**
+     * Обход всех элементов без создания итератора и упаковки.
+     */
+    public void forEach(IntConsumer action) {
+        Objects.requireNonNull(action);
+        if (hasFreeKey) action.accept(FREE_KEY);
+        if (hasRemovedKey) action.accept(REMOVED_KEY);
+        for (int k : array) {
+            if (k != FREE_KEY && k != REMOVED_KEY) action.accept(k);
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size()];
+        int i = 0;
+        if (hasFreeKey) result[i++] = FREE_KEY;
+        if (hasRemovedKey) result[i++] = REMOVED_KEY;
+        for (int k : array) {
+            if (k != FREE_KEY && k != REMOVED_KEY) result[i++] = k;
+        }
+        return result;
+    }
+
+    /**
+     * Представление этого сета в виде Set<Integer> для старого кода.
+     * Данные не копируются, все изменения видны в обе стороны.
+     * Методы представления упаковывают числа, так что в горячем коде
+     * лучше вызывать add(int)/contains(int) напрямую.
+     */
+    public Set<Integer> asSet() {
+        return new SetView();
+    }
+
+    private final class SetView extends AbstractSet<Integer> {
+        @Override
+        public int size() {
+            return IntHashSet.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer && IntHashSet.this.contains((Integer) o);
+        }
+
+        @Override
+        public boolean add(Integer key) {
+            return key != null && IntHashSet.this.add(key);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof Integer && IntHashSet.this.remove((Integer) o);
+        }
+
+        @Override
+        public void clear() {
+            IntHashSet.this.clear();
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new IntIterator();
+        }
+    }
+
+    /**
+     * Сначала отдает ключи из флагов, затем идет по массиву.
+     * Индекс -2 соответствует FREE_KEY, -1 - REMOVED_KEY.
+     */
+    private final class IntIterator implements Iterator<Integer> {
+        int index = -3;
+        int current;
+        boolean canRemove;
+
+        private int nextIndex(int from) {
+            int i = from + 1;
+            if (i == -2 && !hasFreeKey) i++;
+            if (i == -1 && !hasRemovedKey) i++;
+            if (i < 0) return i;
+            while (i < array.length && (array[i] == FREE_KEY || array[i] == REMOVED_KEY)) i++;
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex(index) < array.length;
+        }
+
+        @Override
+        public Integer next() {
+            int i = nextIndex(index);
+            if (i >= array.length) throw new NoSuchElementException();
+            index = i;
+            current = i == -2 ? FREE_KEY : i == -1 ? REMOVED_KEY : array[i];
+            canRemove = true;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) throw new IllegalStateException();
+            canRemove = false;
+            IntHashSet.this.remove(current);
+        }
+    }
+}
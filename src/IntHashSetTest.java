@@ -0,0 +1,76 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IntHashSetTest {
+    private IntHashSet set = new IntHashSet();
+    private Random random = new Random(1720557871);
+
+    @Test
+    public void addTest() {
+        assertTrue(set.add(5));
+        assertTrue(set.add(-7));
+        assertFalse(set.add(5));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(-7));
+        assertFalse(set.contains(6));
+        assertTrue(set.size() == 2);
+    }
+
+    @Test
+    public void reservedKeysTest() {
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(Integer.MIN_VALUE));
+        assertTrue(set.add(0));
+        assertTrue(set.add(Integer.MIN_VALUE));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(Integer.MIN_VALUE));
+        assertTrue(set.size() == 2);
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.remove(Integer.MIN_VALUE));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void removeTest() {
+        for (int i = 1; i <= 1000; i++) set.add(i);
+        for (int i = 1; i <= 1000; i += 2) assertTrue(set.remove(i));
+        assertFalse(set.remove(1));
+        assertTrue(set.size() == 500);
+        for (int i = 1; i <= 1000; i++) assertEquals(i % 2 == 0, set.contains(i));
+    }
+
+    @Test
+    public void randomTest() {
+        Set<Integer> expected = new java.util.HashSet<>();
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(50000) - 25000;
+            if (random.nextBoolean()) assertEquals(expected.add(key), set.add(key));
+            else assertEquals(expected.remove(key), set.remove(key));
+        }
+        assertEquals(expected.size(), set.size());
+        for (int key : set.toArray()) assertTrue(expected.contains(key));
+    }
+
+    @Test
+    public void asSetTest() {
+        Set<Integer> view = set.asSet();
+        assertTrue(view.add(0));
+        assertTrue(view.add(42));
+        assertFalse(view.add(42));
+        assertTrue(set.contains(42));
+        set.add(Integer.MIN_VALUE);
+        assertEquals(new java.util.HashSet<>(Arrays.asList(0, 42, Integer.MIN_VALUE)), view);
+        Iterator<Integer> iterator = view.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == 42) iterator.remove();
+        }
+        assertFalse(set.contains(42));
+        assertTrue(view.size() == 2);
+        assertFalse(view.contains("42"));
+    }
+}
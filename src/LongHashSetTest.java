@@ -0,0 +1,76 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LongHashSetTest {
+    private LongHashSet set = new LongHashSet();
+    private Random random = new Random(1720557871);
+
+    @Test
+    public void addTest() {
+        assertTrue(set.add(5L));
+        assertTrue(set.add(-7L));
+        assertFalse(set.add(5L));
+        assertTrue(set.contains(5L));
+        assertTrue(set.contains(-7L));
+        assertFalse(set.contains(6L));
+        assertTrue(set.size() == 2);
+    }
+
+    @Test
+    public void reservedKeysTest() {
+        assertFalse(set.contains(0L));
+        assertFalse(set.contains(Long.MIN_VALUE));
+        assertTrue(set.add(0L));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertFalse(set.add(0L));
+        assertTrue(set.contains(0L));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertTrue(set.size() == 2);
+        assertTrue(set.remove(0L));
+        assertFalse(set.contains(0L));
+        assertTrue(set.remove(Long.MIN_VALUE));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void removeTest() {
+        for (long i = 1; i <= 1000; i++) set.add(i);
+        for (long i = 1; i <= 1000; i += 2) assertTrue(set.remove(i));
+        assertFalse(set.remove(1L));
+        assertTrue(set.size() == 500);
+        for (long i = 1; i <= 1000; i++) assertEquals(i % 2 == 0, set.contains(i));
+    }
+
+    @Test
+    public void randomTest() {
+        Set<Long> expected = new java.util.HashSet<>();
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(50000) - 25000L;
+            if (random.nextBoolean()) assertEquals(expected.add(key), set.add(key));
+            else assertEquals(expected.remove(key), set.remove(key));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key : set.toArray()) assertTrue(expected.contains(key));
+    }
+
+    @Test
+    public void asSetTest() {
+        Set<Long> view = set.asSet();
+        assertTrue(view.add(0L));
+        assertTrue(view.add(42L));
+        assertFalse(view.add(42L));
+        assertTrue(set.contains(42L));
+        set.add(Long.MIN_VALUE);
+        assertEquals(new java.util.HashSet<>(Arrays.asList(0L, 42L, Long.MIN_VALUE)), view);
+        Iterator<Long> iterator = view.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == 42L) iterator.remove();
+        }
+        assertFalse(set.contains(42L));
+        assertTrue(view.size() == 2);
+        assertFalse(view.contains(42));
+    }
+}
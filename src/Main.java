@@ -8,10 +8,28 @@ public class Main {
         System.out.println("Список пустой? : " + hashSet1.isEmpty());
         hashSet1.add("-140088382");
         Random random = new Random();
-        for (int i = 0; i < 140000; i++) {
-            hashSet1.add(String.valueOf(random.nextInt()));
+        /**
+         * Строки создаем заранее, чтобы в замер времени
+         * попала только работа самого сета
+         */
+        String[] strings = new String[140000];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = String.valueOf(random.nextInt());
         }
+        long start = System.nanoTime();
+        for (String s : strings) {
+            hashSet1.add(s);
+        }
+        long addTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        int found = 0;
+        for (String s : strings) {
+            if (hashSet1.contains(s)) found++;
+        }
+        long containsTime = System.nanoTime() - start;
         System.out.println("Размер списка после заполнения: " + hashSet1.size());
+        System.out.println("Время заполнения, мкс: " + addTime / 1000);
+        System.out.println("Время поиска " + found + " элементов, мкс: " + containsTime / 1000);
         System.out.println("Список пустой? : " + hashSet1.isEmpty());
         System.out.println("Этот элемент там есть " + hashSet1.contains("-140088382"));
         System.out.println("А этого нет " + hashSet1.contains("-sd"));
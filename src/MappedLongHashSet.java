@@ -0,0 +1,430 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Сет примитивных long, который хранится не в куче, а в файле, отображенном
+ * в память (MappedByteBuffer). Устроен так же, как LongHashSet: открытая
+ * адресация, линейное пробирование, FREE_KEY - пустая ячейка, REMOVED_KEY -
+ * удаленная, а сами эти два числа хранятся во флагах.
+ *
+ * Один MappedByteBuffer не больше 2 Гб, поэтому ячейки разбиты на сегменты
+ * по 2^segmentShift ячеек, каждый сегмент отображается своим буфером.
+ * Индексы ячеек - long, так что ячеек может быть больше 2^31.
+ *
+ * Файл можно открыть заново после перезапуска: конструктор просто
+ * отображает его, ничего не перестраивая. В заголовке лежат размер массива,
+ * количество элементов и флаги. Пока сет открыт, в заголовке стоит флаг
+ * DIRTY_FLAG, close() его снимает. Если процесс упал, не вызвав close(),
+ * то счетчики в заголовке могут быть старыми, и при открытии они
+ * пересчитываются проходом по файлу. Флаги FREE_KEY и REMOVED_KEY
+ * пересчитать не из чего, поэтому они пишутся в заголовок сразу.
+ */
+public class MappedLongHashSet implements Closeable {
+    private static final double MAX_FULLNESS = 0.7;
+    private static final long INITIAL_SIZE = 1024;
+    /**
+     * 2^40 ячеек - это файл в 8 Тб
+     */
+    private static final long MAX_SIZE = 1L << 40;
+    /**
+     * 2^27 ячеек по 8 байт - сегмент в 1 Гб
+     */
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long FREE_KEY = 0;
+    private static final long REMOVED_KEY = Long.MIN_VALUE;
+    /**
+     * Заголовок занимает одну страницу, ячейки начинаются сразу за ним.
+     * В заголовке: MAGIC, VERSION, флаги, размер массива, количество
+     * элементов и количество удаленных ячеек.
+     */
+    private static final int HEADER_SIZE = 4096;
+    private static final long MAGIC = 0x3154455347474E4CL;
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int FLAGS_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int REMOVED_OFFSET = 32;
+    private static final int FREE_KEY_FLAG = 1;
+    private static final int REMOVED_KEY_FLAG = 2;
+    private static final int DIRTY_FLAG = 4;
+
+    private final Path path;
+    private final int segmentShift;
+    private final long segmentMask;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long mask;
+    /**
+     * Количество элементов в массиве, флаги сюда не входят
+     */
+    private long realSize;
+    private long removedSize;
+    private boolean hasFreeKey;
+    private boolean hasRemovedKey;
+
+    MappedLongHashSet(Path path) throws IOException {
+        this(path, 0);
+    }
+
+    /**
+     * Открывает файл path, а если его нет, то создает сет, в который можно
+     * добавить expectedSize элементов без единого увеличения массива.
+     * Если в существующий файл expectedSize не помещается, то он увеличивается.
+     */
+    MappedLongHashSet(Path path, long expectedSize) throws IOException {
+        this(path, expectedSize, SEGMENT_SHIFT);
+    }
+
+    /**
+     * segmentShift меньше обычного нужен тестам, чтобы проверить
+     * несколько сегментов на маленьком файле
+     */
+    MappedLongHashSet(Path path, long expectedSize, int segmentShift) throws IOException {
+        long size = tableSizeFor(expectedSize);
+        this.path = path;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        boolean exists = Files.exists(path) && Files.size(path) > 0;
+        if (exists && Files.size(path) < HEADER_SIZE) {
+            throw new IOException("Not a MappedLongHashSet file: " + path);
+        }
+        channel = FileChannel.open(path, CREATE, READ, WRITE);
+        header = map(channel, 0, HEADER_SIZE);
+        if (exists) {
+            if (header.getLong(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                channel.close();
+                throw new IOException("Not a MappedLongHashSet file: " + path);
+            }
+            long fileCapacity = header.getLong(CAPACITY_OFFSET);
+            if (fileCapacity < INITIAL_SIZE || fileCapacity > MAX_SIZE || Long.bitCount(fileCapacity) != 1
+                    || channel.size() != HEADER_SIZE + fileCapacity * 8) {
+                channel.close();
+                throw new IOException("Corrupted MappedLongHashSet file: " + path + ", capacity " + fileCapacity);
+            }
+            int flags = header.getInt(FLAGS_OFFSET);
+            hasFreeKey = (flags & FREE_KEY_FLAG) != 0;
+            hasRemovedKey = (flags & REMOVED_KEY_FLAG) != 0;
+            setCapacity(fileCapacity);
+            segments = mapSlots(channel, capacity);
+            if ((flags & DIRTY_FLAG) != 0) {
+                recount();
+            } else {
+                realSize = header.getLong(SIZE_OFFSET);
+                removedSize = header.getLong(REMOVED_OFFSET);
+            }
+        } else {
+            header.putLong(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            setCapacity(size);
+            segments = mapSlots(channel, capacity);
+        }
+        writeHeader(header, true);
+        header.force();
+        if (size > capacity) rehash(size);
+    }
+
+    private static long tableSizeFor(long expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+        }
+        long size = INITIAL_SIZE;
+        while (size < MAX_SIZE && size * MAX_FULLNESS < expectedSize + 1) size *= 2;
+        return size;
+    }
+
+    private void setCapacity(long capacity) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Отображаем ячейки файла сегментами. Если файл короче, то map
+     * удлиняет его, новые байты нулевые, то есть ячейки пустые (FREE_KEY).
+     */
+    private MappedByteBuffer[] mapSlots(FileChannel channel, long capacity) throws IOException {
+        long segmentSize = 1L << segmentShift;
+        int count = (int) ((capacity + segmentSize - 1) >>> segmentShift);
+        MappedByteBuffer[] result = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long slots = Math.min(segmentSize, capacity - i * segmentSize);
+            result[i] = map(channel, HEADER_SIZE + i * segmentSize * 8, slots * 8);
+        }
+        return result;
+    }
+
+    private long get(MappedByteBuffer[] segments, long index) {
+        return segments[(int) (index >>> segmentShift)].getLong((int) (index & segmentMask) << 3);
+    }
+
+    private void set(MappedByteBuffer[] segments, long index, long key) {
+        segments[(int) (index >>> segmentShift)].putLong((int) (index & segmentMask) << 3, key);
+    }
+
+    private void writeHeader(MappedByteBuffer header, boolean dirty) {
+        header.putLong(CAPACITY_OFFSET, capacity);
+        header.putLong(SIZE_OFFSET, realSize);
+        header.putLong(REMOVED_OFFSET, removedSize);
+        header.putInt(FLAGS_OFFSET, flags(dirty));
+    }
+
+    private int flags(boolean dirty) {
+        return (hasFreeKey ? FREE_KEY_FLAG : 0) | (hasRemovedKey ? REMOVED_KEY_FLAG : 0) | (dirty ? DIRTY_FLAG : 0);
+    }
+
+    /**
+     * FREE_KEY и REMOVED_KEY лежат только во флагах, и recount() после
+     * падения их не восстановит. Поэтому флаги пишем в заголовок сразу,
+     * как только они меняются, а не только в force() и close().
+     */
+    private void writeFlags() {
+        header.putInt(FLAGS_OFFSET, flags(true));
+    }
+
+    private void recount() {
+        realSize = 0;
+        removedSize = 0;
+        for (long i = 0; i < capacity; i++) {
+            long k = get(segments, i);
+            if (k == REMOVED_KEY) removedSize++;
+            else if (k != FREE_KEY) realSize++;
+        }
+    }
+
+    public long size() {
+        return realSize + (hasFreeKey ? 1 : 0) + (hasRemovedKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(long key) {
+        if (key == FREE_KEY) return hasFreeKey;
+        if (key == REMOVED_KEY) return hasRemovedKey;
+        long index = hash(key, mask);
+        for (long i = 0; i < capacity; i++) {
+            long k = get(segments, index);
+            if (k == key) return true;
+            if (k == FREE_KEY) return false;
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Как в LongHashSet: один проход по цепочке, добавляем в первую
+     * удаленную ячейку по пути или в пустую в конце цепочки.
+     */
+    public boolean add(long key) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey) return false;
+            hasFreeKey = true;
+            writeFlags();
+            return true;
+        }
+        if (key == REMOVED_KEY) {
+            if (hasRemovedKey) return false;
+            hasRemovedKey = true;
+            writeFlags();
+            return true;
+        }
+        long index = whereToAdd(key);
+        if (index < 0) return false;
+        if (get(segments, index) == REMOVED_KEY) {
+            removedSize--;
+        } else if ((double) (realSize + removedSize + 1) / capacity > MAX_FULLNESS) {
+            resize();
+            index = whereToAdd(key);
+        }
+        set(segments, index, key);
+        realSize++;
+        return true;
+    }
+
+    private long whereToAdd(long key) {
+        long index = hash(key, mask);
+        long firstRemoved = -1;
+        for (long i = 0; i < capacity; i++) {
+            long k = get(segments, index);
+            if (k == key) return -1;
+            if (k == FREE_KEY) return firstRemoved == -1 ? index : firstRemoved;
+            if (k == REMOVED_KEY && firstRemoved == -1) firstRemoved = index;
+            index = (index + 1) & mask;
+        }
+        return firstRemoved;
+    }
+
+    public boolean remove(long key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) return false;
+            hasFreeKey = false;
+            writeFlags();
+            return true;
+        }
+        if (key == REMOVED_KEY) {
+            if (!hasRemovedKey) return false;
+            hasRemovedKey = false;
+            writeFlags();
+            return true;
+        }
+        long index = hash(key, mask);
+        for (long i = 0; i < capacity; i++) {
+            long k = get(segments, index);
+            if (k == FREE_KEY) return false;
+            if (k == key) {
+                set(segments, index, REMOVED_KEY);
+                realSize--;
+                removedSize++;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Как в LongHashSet: если удаленных больше, чем элементов, то размер
+     * не меняем, иначе удваиваем, а в полном массиве MAX_SIZE бросаем
+     * IllegalStateException.
+     */
+    private void resize() {
+        long newSize = capacity;
+        if (realSize >= removedSize) {
+            if (newSize >= MAX_SIZE) throw new IllegalStateException("MappedLongHashSet is full: " + realSize + " keys");
+            newSize *= 2;
+        }
+        try {
+            rehash(newSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Элементы раскладываются в новый файл рядом со старым (path.rehash),
+     * который затем атомарно заменяет старый. Если процесс упадет посередине,
+     * то по пути path останется старый, целый файл.
+     * Старые буферы в Java 8 нельзя освободить явно, память под ними
+     * освободится, когда их соберет сборщик мусора.
+     */
+    private void rehash(long newSize) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".rehash");
+        Files.deleteIfExists(tmp);
+        FileChannel newChannel = FileChannel.open(tmp, CREATE_NEW, READ, WRITE);
+        MappedByteBuffer newHeader = map(newChannel, 0, HEADER_SIZE);
+        MappedByteBuffer[] newSegments = mapSlots(newChannel, newSize);
+        long newMask = newSize - 1;
+        for (long i = 0; i < capacity; i++) {
+            long k = get(segments, i);
+            if (k != FREE_KEY && k != REMOVED_KEY) {
+                long index = hash(k, newMask);
+                while (get(newSegments, index) != FREE_KEY) index = (index + 1) & newMask;
+                set(newSegments, index, k);
+            }
+        }
+        setCapacity(newSize);
+        removedSize = 0;
+        newHeader.putLong(MAGIC_OFFSET, MAGIC);
+        newHeader.putInt(VERSION_OFFSET, VERSION);
+        writeHeader(newHeader, true);
+        for (MappedByteBuffer segment : newSegments) segment.force();
+        newHeader.force();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = newChannel;
+        header = newHeader;
+        segments = newSegments;
+    }
+
+    /**
+     * То же фибоначчиево хэширование, что и в LongHashSet,
+     * но индекс long, так как ячеек может быть больше 2^31.
+     */
+    private static long hash(long key, long mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Размер массива не меняется, все ячейки заполняются нулями (FREE_KEY)
+     */
+    public void clear() {
+        byte[] zeros = new byte[1 << 16];
+        for (MappedByteBuffer segment : segments) {
+            for (int from = 0; from < segment.capacity(); from += zeros.length) {
+                segment.position(from);
+                segment.put(zeros, 0, Math.min(zeros.length, segment.capacity() - from));
+            }
+        }
+        realSize = 0;
+        removedSize = 0;
+        hasFreeKey = false;
+        hasRemovedKey = false;
+        writeFlags();
+    }
+
+    /**
+     * Обход всех элементов без упаковки
+     */
+    public void forEach(LongConsumer action) {
+        Objects.requireNonNull(action);
+        if (hasFreeKey) action.accept(FREE_KEY);
+        if (hasRemovedKey) action.accept(REMOVED_KEY);
+        for (long i = 0; i < capacity; i++) {
+            long k = get(segments, i);
+            if (k != FREE_KEY && k != REMOVED_KEY) action.accept(k);
+        }
+    }
+
+    /**
+     * Текущий размер массива, для тестов
+     */
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Записывает счетчики в заголовок и сбрасывает все изменения на диск
+     */
+    public void force() {
+        writeHeader(header, true);
+        for (MappedByteBuffer segment : segments) segment.force();
+        header.force();
+    }
+
+    /**
+     * Сбрасывает изменения на диск и снимает DIRTY_FLAG. После close()
+     * сетом пользоваться нельзя.
+     */
+    @Override
+    public void close() throws IOException {
+        if (segments == null) return;
+        force();
+        writeHeader(header, false);
+        header.force();
+        channel.close();
+        segments = null;
+        header = null;
+    }
+}
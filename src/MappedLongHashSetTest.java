@@ -0,0 +1,143 @@
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MappedLongHashSetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Random random = new Random(1720557871);
+    private MappedLongHashSet set;
+
+    @After
+    public void after() throws IOException {
+        if (set != null) set.close();
+    }
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("set.bin");
+    }
+
+    @Test
+    public void addTest() throws IOException {
+        set = new MappedLongHashSet(file());
+        assertTrue(set.add(5L));
+        assertTrue(set.add(-7L));
+        assertFalse(set.add(5L));
+        assertTrue(set.contains(5L));
+        assertTrue(set.contains(-7L));
+        assertFalse(set.contains(6L));
+        assertTrue(set.size() == 2);
+        assertTrue(set.add(0L));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.size() == 4);
+        assertTrue(set.remove(0L));
+        assertTrue(set.remove(5L));
+        assertFalse(set.remove(5L));
+        assertTrue(set.size() == 2);
+    }
+
+    @Test
+    public void randomTest() throws IOException {
+        /**
+         * Сегменты по 2^10 ячеек, чтобы массив был разбит на много
+         * сегментов и несколько раз увеличивался
+         */
+        set = new MappedLongHashSet(file(), 0, 10);
+        Set<Long> expected = new java.util.HashSet<>();
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(50000) - 25000L;
+            if (random.nextInt(3) > 0) assertEquals(expected.add(key), set.add(key));
+            else assertEquals(expected.remove(key), set.remove(key));
+        }
+        assertTrue(set.capacity() > 1 << 10);
+        assertEquals(expected.size(), set.size());
+        Set<Long> actual = new java.util.HashSet<>();
+        set.forEach(actual::add);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void reopenTest() throws IOException {
+        set = new MappedLongHashSet(file(), 100000);
+        long capacity = set.capacity();
+        for (long i = -50000; i < 50000; i++) set.add(i * 31);
+        set.remove(31L);
+        set.close();
+        assertFalse(Files.exists(file().resolveSibling("set.bin.rehash")));
+
+        set = new MappedLongHashSet(file());
+        assertTrue(set.capacity() == capacity);
+        assertTrue(set.size() == 99999);
+        assertTrue(set.contains(0L));
+        assertTrue(set.contains(-31L * 50000));
+        assertFalse(set.contains(31L));
+        assertFalse(set.contains(1L));
+    }
+
+    @Test
+    public void dirtyReopenTest() throws IOException {
+        /**
+         * Без close() в заголовке остаются старые счетчики и DIRTY_FLAG,
+         * при открытии размер пересчитывается по ячейкам. 0 и Long.MIN_VALUE
+         * хранятся только во флагах, они должны быть в заголовке сразу.
+         */
+        MappedLongHashSet first = new MappedLongHashSet(file());
+        for (long i = 1; i <= 500; i++) first.add(i);
+        for (long i = 1; i <= 100; i++) first.remove(i);
+        first.add(Long.MIN_VALUE);
+        first.force();
+        first.remove(Long.MIN_VALUE);
+        first.add(0L);
+        set = new MappedLongHashSet(file());
+        assertTrue(set.size() == 401);
+        assertTrue(set.contains(101L));
+        assertFalse(set.contains(100L));
+        assertTrue(set.contains(0L));
+        assertFalse(set.contains(Long.MIN_VALUE));
+        first.close();
+    }
+
+    @Test
+    public void clearTest() throws IOException {
+        set = new MappedLongHashSet(file(), 5000);
+        for (long i = 0; i < 5000; i++) set.add(i);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(10L));
+        assertTrue(set.add(10L));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongFileTest() throws IOException {
+        Files.write(file(), new byte[]{1, 2, 3});
+        new MappedLongHashSet(file());
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedCapacityTest() throws IOException {
+        new MappedLongHashSet(file()).close();
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            ByteBuffer capacity = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            capacity.putLong(0, 3000);
+            channel.write(capacity, 16);
+        }
+        new MappedLongHashSet(file());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongCapacityTest() throws IOException {
+        new MappedLongHashSet(file(), -1);
+    }
+}
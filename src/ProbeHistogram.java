@@ -0,0 +1,90 @@
+import java.util.Random;
+
+/**
+ * Сравнение длин поиска в HashSet (линейное пробирование) и
+ * RobinHoodHashSet при разной заполненности массива на 2^20 ячеек.
+ * Длина поиска - сколько ячеек проверяется, чтобы найти элемент
+ * (hit) или убедиться, что его нет (miss).
+ */
+public class ProbeHistogram {
+    private static final int CAPACITY = 1 << 20;
+
+    public static void main(String[] args) {
+        Random random = new Random(1720557871);
+        String[] strings = new String[(int) (0.9 * CAPACITY)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = String.valueOf(random.nextLong());
+        }
+
+        HashSet<String> linear = new HashSet<>();
+        fill(linear, strings, (int) (0.7 * CAPACITY));
+        print("HashSet, заполненность 0.7", linear.hitProbeLengths(), linear.missProbeLengths());
+
+        double[] fullness = {0.7, 0.85, 0.9};
+        for (double f : fullness) {
+            RobinHoodHashSet<String> robinHood = new RobinHoodHashSet<>(0.9);
+            fill(robinHood, strings, (int) (f * CAPACITY));
+            print("RobinHoodHashSet, заполненность " + f,
+                    robinHood.hitProbeLengths(), robinHood.missProbeLengths());
+        }
+    }
+
+    private static void fill(java.util.Set<String> set, String[] strings, int count) {
+        for (int i = 0; i < count; i++) {
+            set.add(strings[i]);
+        }
+    }
+
+    static void print(String title, int[] hits, int[] misses) {
+        System.out.println(title);
+        System.out.println("           mean     p50   p90   p99   max");
+        System.out.println("  hit  " + summary(hits));
+        System.out.println("  miss " + summary(misses));
+        System.out.println("  проверок  hit       miss");
+        int[] bounds = {1, 2, 3, 4, 8, 16, 32, 64, 128, Integer.MAX_VALUE};
+        int from = 1;
+        for (int to : bounds) {
+            long h = count(hits, from, to);
+            long m = count(misses, from, to);
+            if (h + m > 0) {
+                String range = from == to ? String.valueOf(from)
+                        : to == Integer.MAX_VALUE ? from + "+" : from + "-" + to;
+                System.out.printf("  %-9s %-9d %d%n", range, h, m);
+            }
+            from = to + 1;
+        }
+        System.out.println();
+    }
+
+    /**
+     * histogram[k] - количество поисков длиной k + 1
+     */
+    private static long count(int[] histogram, int from, int to) {
+        long result = 0;
+        for (int k = from - 1; k < histogram.length && k < to; k++) {
+            result += histogram[k];
+        }
+        return result;
+    }
+
+    private static String summary(int[] histogram) {
+        long total = 0;
+        long sum = 0;
+        for (int k = 0; k < histogram.length; k++) {
+            total += histogram[k];
+            sum += (long) histogram[k] * (k + 1);
+        }
+        return String.format("%-8.2f %-5d %-5d %-5d %d", (double) sum / total,
+                percentile(histogram, total, 0.5), percentile(histogram, total, 0.9),
+                percentile(histogram, total, 0.99), histogram.length);
+    }
+
+    private static int percentile(int[] histogram, long total, double p) {
+        long seen = 0;
+        for (int k = 0; k < histogram.length; k++) {
+            seen += histogram[k];
+            if (seen >= p * total) return k + 1;
+        }
+        return histogram.length;
+    }
+}
@@ -0,0 +1,354 @@
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * Хэш-сет с открытой адресацией и пробированием Robin Hood.
+ *
+ * Как и в HashSet, элементы ищутся линейно от начальной ячейки (hash),
+ * но при добавлении новый элемент забирает ячейку у того, кто стоит
+ * ближе к своей начальной ячейке, чем новый к своей ("у богатых
+ * забираем, бедным отдаем"). Из-за этого все цепочки примерно одной
+ * длины, и поиск можно прекратить, как только наше расстояние от начала
+ * стало больше, чем у элемента в ячейке - дальше нашего элемента быть
+ * не может. Поэтому массив можно заполнять плотнее, чем в HashSet.
+ *
+ * Удаленных ячеек (маркеров) нет: при удалении следующие элементы
+ * цепочки сдвигаются на одну ячейку назад.
+ */
+public class RobinHoodHashSet<T> implements Set<T> {
+    /**
+     * Заполненность по умолчанию. Для HashSet это 0.7,
+     * здесь цепочки короткие и при 0.9.
+     */
+    private static final double DEFAULT_MAX_FULLNESS = 0.875;
+    private static final int INITIAL_SIZE = 128;
+    private static final int MAX_SIZE = 1 << 30;
+    private final double maxFullness;
+    /**
+     * Как и в HashSet: элементы лежат прямо в массиве (null - пусто),
+     * а их хэш-коды - в hashes с тем же индексом.
+     */
+    private Object[] array;
+    private int[] hashes;
+    private int realSize;
+    private int mask = INITIAL_SIZE - 1;
+
+    RobinHoodHashSet() {
+        this(DEFAULT_MAX_FULLNESS);
+    }
+
+    RobinHoodHashSet(double maxFullness) {
+        if (!(maxFullness > 0 && maxFullness < 1)) {
+            throw new IllegalArgumentException("maxFullness must be in (0, 1): " + maxFullness);
+        }
+        this.maxFullness = maxFullness;
+        array = new Object[INITIAL_SIZE];
+        hashes = new int[INITIAL_SIZE];
+    }
+
+    @Override
+    public int size() {
+        return realSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return realSize == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        return indexOf(o, o.hashCode()) != -1;
+    }
+
+    /**
+     * dist - сколько шагов мы уже сделали от начальной ячейки.
+     * Если у элемента в ячейке расстояние до его начальной меньше dist,
+     * то наш элемент стоял бы здесь, значит его нет.
+     */
+    private int indexOf(Object o, int hashCode) {
+        int index = hash(hashCode);
+        for (int dist = 0; ; dist++) {
+            Object e = array[index];
+            if (e == null || distance(index) < dist) return -1;
+            if (hashes[index] == hashCode && o.equals(e)) return index;
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Один проход: ищем элемент до той же точки, где остановился бы indexOf,
+     * и если не нашли, то вставляем именно туда.
+     */
+    @Override
+    public boolean add(T t) {
+        if (t == null) return false;
+        int hashCode = t.hashCode();
+        int index = hash(hashCode);
+        int dist = 0;
+        for (Object e; (e = array[index]) != null && distance(index) >= dist; dist++) {
+            if (hashes[index] == hashCode && t.equals(e)) return false;
+            index = (index + 1) & mask;
+        }
+        if ((double) (realSize + 1) / array.length > maxFullness) {
+            if (!resize()) return false;
+            index = hash(hashCode);
+            dist = 0;
+        }
+        insert(index, dist, t, hashCode);
+        realSize++;
+        return true;
+    }
+
+    /**
+     * Кладем o в ячейку index, где он стоит на расстоянии dist от начальной.
+     * Если ячейка занята элементом, который ближе к своей начальной, то
+     * меняемся с ним местами и дальше ищем место уже для него.
+     */
+    private void insert(int index, int dist, Object o, int hashCode) {
+        while (true) {
+            Object e = array[index];
+            if (e == null) {
+                array[index] = o;
+                hashes[index] = hashCode;
+                return;
+            }
+            int d = distance(index);
+            if (d < dist) {
+                int h = hashes[index];
+                array[index] = o;
+                hashes[index] = hashCode;
+                o = e;
+                hashCode = h;
+                dist = d;
+            }
+            index = (index + 1) & mask;
+            dist++;
+        }
+    }
+
+    /**
+     * Расстояние элемента в ячейке index от его начальной ячейки
+     */
+    private int distance(int index) {
+        return (index - hash(hashes[index])) & mask;
+    }
+
+    /**
+     * Фибоначчиево перемешивание, как в HashSet, но без seed
+     */
+    private int hash(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private boolean resize() {
+        if (array.length >= MAX_SIZE) return false;
+        Object[] oldArray = array;
+        int[] oldHashes = hashes;
+        array = new Object[oldArray.length * 2];
+        hashes = new int[oldArray.length * 2];
+        mask = array.length - 1;
+        for (int i = 0; i < oldArray.length; i++) {
+            if (oldArray[i] != null) insert(hash(oldHashes[i]), 0, oldArray[i], oldHashes[i]);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        int index = indexOf(o, o.hashCode());
+        if (index == -1) return false;
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Удаление со сдвигом назад: все следующие элементы цепочки,
+     * которые стоят не в своей начальной ячейке, сдвигаем на одну
+     * ячейку ближе к ней. Останавливаемся на пустой ячейке или на
+     * элементе, который уже стоит в своей начальной.
+     */
+    private void removeAt(int index) {
+        int next = (index + 1) & mask;
+        while (array[next] != null && distance(next) != 0) {
+            array[index] = array[next];
+            hashes[index] = hashes[next];
+            index = next;
+            next = (next + 1) & mask;
+        }
+        array[index] = null;
+        realSize--;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new RobinHoodIterator();
+    }
+
+    /**
+     * Идем по массиву в обратную сторону, начиная с пустой ячейки.
+     * Сдвиг при удалении переносит элементы только назад и только
+     * в пределах цепочки, а цепочка не может пересечь пустую ячейку.
+     * Поэтому при iterator.remove() на место удаленного попадают только
+     * уже пройденные элементы, и ни один элемент не теряется и не
+     * отдается дважды.
+     */
+    private final class RobinHoodIterator implements Iterator<T> {
+        int index;
+        int remaining = realSize;
+        int current = -1;
+
+        RobinHoodIterator() {
+            while (array[index] != null) index++;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            do {
+                index = (index - 1) & mask;
+            } while (array[index] == null);
+            remaining--;
+            current = index;
+            return (T) array[index];
+        }
+
+        @Override
+        public void remove() {
+            if (current == -1) throw new IllegalStateException();
+            removeAt(current);
+            current = -1;
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toArray(new Object[realSize]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T1> T1[] toArray(T1[] a) {
+        if (a.length < realSize) {
+            a = (T1[]) Array.newInstance(a.getClass().getComponentType(), realSize);
+        }
+        int i = 0;
+        for (Object e : array) {
+            if (e != null) a[i++] = (T1) e;
+        }
+        if (a.length > realSize) a[realSize] = null;
+        return a;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        Objects.requireNonNull(c);
+        boolean result = false;
+        for (T t : c) {
+            if (add(t)) result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        boolean modified = false;
+        Iterator<T> iterator = iterator();
+        while (iterator.hasNext()) {
+            if (!c.contains(iterator.next())) {
+                iterator.remove();
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        boolean result = false;
+        for (Object t : c) {
+            if (remove(t)) result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        realSize = 0;
+        mask = INITIAL_SIZE - 1;
+        array = new Object[INITIAL_SIZE];
+        hashes = new int[INITIAL_SIZE];
+    }
+
+    /**
+     * Гистограмма длин поиска для элементов, которые есть в сете:
+     * result[k] - сколько элементов находится за k + 1 проверку ячеек.
+     */
+    int[] hitProbeLengths() {
+        int[] result = new int[1];
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] != null) result = increment(result, distance(i));
+        }
+        return result;
+    }
+
+    /**
+     * Гистограмма длин неудачного поиска в том же виде: для каждой начальной
+     * ячейки считаем, сколько ячеек проверит indexOf, прежде чем сдастся.
+     */
+    int[] missProbeLengths() {
+        int[] result = new int[1];
+        for (int home = 0; home < array.length; home++) {
+            int index = home;
+            int dist = 0;
+            while (array[index] != null && distance(index) >= dist) {
+                index = (index + 1) & mask;
+                dist++;
+            }
+            result = increment(result, dist);
+        }
+        return result;
+    }
+
+    private static int[] increment(int[] histogram, int bucket) {
+        if (bucket >= histogram.length) histogram = Arrays.copyOf(histogram, bucket + 1);
+        histogram[bucket]++;
+        return histogram;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Set)) return false;
+        Set<?> set = (Set<?>) obj;
+        return set.size() == size() && containsAll(set);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Object e : array) {
+            if (e != null) h += e.hashCode();
+        }
+        return h;
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RobinHoodHashSetTest extends HashSetTest {
+    @Override
+    protected <E> Set<E> newSet() {
+        return new RobinHoodHashSet<>();
+    }
+
+    @Test
+    public void highFullnessTest() {
+        RobinHoodHashSet<Integer> set = new RobinHoodHashSet<>(0.95);
+        Set<Integer> expected = new java.util.HashSet<>();
+        Random random = new Random(1720557871);
+        for (int i = 0; i < 300000; i++) {
+            int key = random.nextInt(100000);
+            if (random.nextInt(3) > 0) assertEquals(expected.add(key), set.add(key));
+            else assertEquals(expected.remove(key), set.remove(key));
+        }
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+    }
+
+    @Test
+    public void iteratorRemoveTest() {
+        /**
+         * Удаление со сдвигом не должно приводить к тому,
+         * что итератор пропустит элемент или отдаст его дважды
+         */
+        for (int i = 0; i < 10000; i++) hashSet.add("key" + i);
+        Set<String> seen = new java.util.HashSet<>();
+        Iterator<String> iterator = hashSet.iterator();
+        while (iterator.hasNext()) {
+            String s = iterator.next();
+            assertTrue(seen.add(s));
+            if (s.hashCode() % 3 != 0) iterator.remove();
+        }
+        assertTrue(seen.size() == 10000);
+        for (String s : seen) assertEquals(s.hashCode() % 3 == 0, hashSet.contains(s));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongFullnessTest() {
+        new RobinHoodHashSet<String>(1.0);
+    }
+}
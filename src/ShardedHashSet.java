@@ -0,0 +1,456 @@
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Сет из нескольких независимых HashSet (шардов). Элемент попадает в шард
+ * по старшим битам перемешанного hashCode(), и дальше все операции с ним
+ * идут только в этом шарде.
+ *
+ * Каждый шард увеличивается сам по себе, поэтому rehash копирует не весь
+ * сет, а только один шард, и массив каждого шарда в shards раз меньше
+ * общего. Предел HashSet (массив не больше 2^30 ячеек) относится тоже
+ * к одному шарду, так что всего элементов может быть больше 2^31:
+ * точное количество возвращает longSize(), а size() упирается
+ * в Integer.MAX_VALUE, как требует Collection.
+ *
+ * С concurrent = true у каждого шарда своя блокировка, и сетом можно
+ * пользоваться из нескольких потоков: операции с разными шардами не
+ * мешают друг другу. Итератор, forEach и spliterator в этом режиме
+ * обходят копию каждого шарда, снятую под его блокировкой, и
+ * ConcurrentModificationException не бросают.
+ *
+ * spliterator делится по шардам, так что parallelStream() обходит
+ * шарды параллельно, а один оставшийся шард делится дальше по ячейкам.
+ */
+public class ShardedHashSet<T> implements Set<T> {
+    private static final int DEFAULT_SHARDS = 16;
+    private static final int MAX_SHARDS = 1 << 16;
+
+    private final HashSet<T>[] shards;
+    /**
+     * Блокировка на каждый шард, null - сет не потокобезопасен
+     */
+    private final ReentrantLock[] locks;
+    /**
+     * Номер шарда - старшие биты хэша: hash >>> shift
+     */
+    private final int shift;
+
+    ShardedHashSet() {
+        this(DEFAULT_SHARDS, false);
+    }
+
+    /**
+     * @param shards     количество шардов, степень 2
+     * @param concurrent своя блокировка на каждый шард
+     */
+    ShardedHashSet(int shards, boolean concurrent) {
+        this(shards, concurrent, 0);
+    }
+
+    /**
+     * Сет, в который можно добавить expectedSize элементов без единого
+     * увеличения массивов (если элементы распределятся по шардам ровно)
+     */
+    @SuppressWarnings("unchecked")
+    ShardedHashSet(int shards, boolean concurrent, long expectedSize) {
+        if (shards < 1 || shards > MAX_SHARDS || Integer.bitCount(shards) != 1) {
+            throw new IllegalArgumentException("shards must be a power of 2 in [1, " + MAX_SHARDS + "]: " + shards);
+        }
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+        }
+        long perShard = (expectedSize + shards - 1) / shards;
+        if (perShard > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("expectedSize is too large for " + shards + " shards: " + expectedSize);
+        }
+        this.shards = (HashSet<T>[]) new HashSet<?>[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = expectedSize == 0 ? new HashSet<>() : new HashSet<>((int) perShard);
+        }
+        if (concurrent) {
+            locks = new ReentrantLock[shards];
+            for (int i = 0; i < shards; i++) {
+                locks[i] = new ReentrantLock();
+            }
+        } else {
+            locks = null;
+        }
+        shift = 32 - Integer.numberOfTrailingZeros(shards);
+    }
+
+    /**
+     * Фибоначчиево перемешивание, как в HashSet, но номер шарда берем
+     * из старших бит. Внутри шарда у всех элементов эти биты одинаковые,
+     * но HashSet сначала подмешивает свой seed, а потом перемешивает
+     * заново, так что ячейки внутри шарда от них не зависят.
+     * При одном шарде shift = 32, а сдвиг int берет только младшие
+     * 5 бит расстояния, поэтому номер дополнительно маскируем.
+     */
+    private int shardOf(Object o) {
+        return ((o.hashCode() * 0x9E3779B9) >>> shift) & (shards.length - 1);
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Точное количество элементов, может быть больше Integer.MAX_VALUE
+     */
+    public long longSize() {
+        long size = 0;
+        for (int i = 0; i < shards.length; i++) {
+            if (locks == null) {
+                size += shards[i].size();
+                continue;
+            }
+            locks[i].lock();
+            try {
+                size += shards[i].size();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(longSize(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return longSize() == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        int i = shardOf(o);
+        if (locks == null) return shards[i].contains(o);
+        locks[i].lock();
+        try {
+            return shards[i].contains(o);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    @Override
+    public boolean add(T t) {
+        if (t == null) return false;
+        int i = shardOf(t);
+        if (locks == null) return shards[i].add(t);
+        locks[i].lock();
+        try {
+            return shards[i].add(t);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        int i = shardOf(o);
+        if (locks == null) return shards[i].remove(o);
+        locks[i].lock();
+        try {
+            return shards[i].remove(o);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * Копия элементов шарда i, снятая под его блокировкой
+     */
+    private Object[] snapshot(int i) {
+        locks[i].lock();
+        try {
+            return shards[i].toArray();
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * Итератор идет по шардам по очереди. Без блокировок это итераторы
+     * самих шардов (и remove() удаляет через них), с блокировками -
+     * итераторы по копиям шардов, а remove() удаляет из сета заново.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new ShardedIterator();
+    }
+
+    private final class ShardedIterator implements Iterator<T> {
+        int shard = -1;
+        Iterator<?> current = Collections.emptyIterator();
+        /**
+         * Итератор, который отдал последний элемент: hasNext()
+         * мог уже перейти к следующему шарду
+         */
+        Iterator<?> last;
+        Object lastElement;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && shard + 1 < shards.length) {
+                shard++;
+                current = locks == null ? shards[shard].iterator() : Arrays.asList(snapshot(shard)).iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = current;
+            lastElement = current.next();
+            return (T) lastElement;
+        }
+
+        @Override
+        public void remove() {
+            if (lastElement == null) throw new IllegalStateException();
+            if (locks == null) {
+                last.remove();
+            } else {
+                ShardedHashSet.this.remove(lastElement);
+            }
+            lastElement = null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < shards.length; i++) {
+            if (locks == null) {
+                shards[i].forEach(action);
+                continue;
+            }
+            for (Object e : snapshot(i)) action.accept((T) e);
+        }
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return new ShardSpliterator(0, shards.length);
+    }
+
+    /**
+     * Обходит шарды с номерами [index, fence). trySplit отдает половину
+     * оставшихся шардов, а когда остался один шард - делит уже его
+     * spliterator (по ячейкам массива или по копии).
+     */
+    private final class ShardSpliterator implements Spliterator<T> {
+        int index;
+        final int fence;
+        /**
+         * spliterator шарда, который обходится сейчас, или null
+         */
+        Spliterator<T> current;
+
+        ShardSpliterator(int index, int fence) {
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Spliterator<T> shardSpliterator(int i) {
+            if (locks == null) return shards[i].spliterator();
+            return (Spliterator<T>) Spliterators.spliterator(snapshot(i), DISTINCT | NONNULL);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            while (true) {
+                if (current == null) {
+                    if (index >= fence) return false;
+                    current = shardSpliterator(index++);
+                }
+                if (current.tryAdvance(action)) return true;
+                current = null;
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (current != null) {
+                current.forEachRemaining(action);
+                current = null;
+            }
+            while (index < fence) shardSpliterator(index++).forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (current == null && fence - index == 1) current = shardSpliterator(index++);
+            if (current == null) {
+                int middle = (index + fence) >>> 1;
+                if (middle <= index) return null;
+                ShardSpliterator prefix = new ShardSpliterator(index, middle);
+                index = middle;
+                return prefix;
+            }
+            if (index < fence) {
+                ShardSpliterator rest = new ShardSpliterator(index, fence);
+                index = fence;
+                return rest;
+            }
+            return current.trySplit();
+        }
+
+        /**
+         * Размеры шардов читаются без блокировок, это только оценка
+         */
+        @Override
+        public long estimateSize() {
+            long estimate = current == null ? 0 : current.estimateSize();
+            for (int i = index; i < fence; i++) estimate += shards[i].size();
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toList().toArray();
+    }
+
+    @Override
+    public <T1> T1[] toArray(T1[] a) {
+        return toList().toArray(a);
+    }
+
+    /**
+     * Все элементы по шардам. Больше Integer.MAX_VALUE элементов в массив
+     * не поместится, тогда бросаем IllegalStateException.
+     */
+    private List<Object> toList() {
+        long size = longSize();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many elements for an array: " + size);
+        }
+        List<Object> list = new ArrayList<>((int) size);
+        for (int i = 0; i < shards.length; i++) {
+            list.addAll(Arrays.asList(locks == null ? shards[i].toArray() : snapshot(i)));
+        }
+        return list;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        Objects.requireNonNull(c);
+        if (c == this) return false;
+        boolean result = false;
+        for (T t : c) {
+            if (add(t)) result = true;
+        }
+        return result;
+    }
+
+    /**
+     * С блокировками filter вызывается для копии шарда, а удаление идет
+     * через remove: под блокировкой шарда чужой код не выполняется,
+     * поэтому filter может обращаться к другим сетам без взаимных блокировок.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+        boolean result = false;
+        for (int i = 0; i < shards.length; i++) {
+            if (locks == null) {
+                if (shards[i].removeIf(filter)) result = true;
+                continue;
+            }
+            for (Object e : snapshot(i)) {
+                if (filter.test((T) e) && remove(e)) result = true;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        if (c == this) return false;
+        return removeIf(e -> !c.contains(e));
+    }
+
+    /**
+     * Если c не меньше нашего сета, то проходим по своим элементам,
+     * иначе удаляем элементы c по одному
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            if (isEmpty()) return false;
+            clear();
+            return true;
+        }
+        if (c.size() >= longSize()) return removeIf(c::contains);
+        boolean result = false;
+        for (Object o : c) {
+            if (remove(o)) result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < shards.length; i++) {
+            if (locks == null) {
+                shards[i].clear();
+                continue;
+            }
+            locks[i].lock();
+            try {
+                shards[i].clear();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Set)) return false;
+        Set<?> set = (Set<?>) obj;
+        return set.size() == size() && containsAll(set);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (T t : this) {
+            h += t.hashCode();
+        }
+        return h;
+    }
+}
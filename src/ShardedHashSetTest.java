@@ -0,0 +1,130 @@
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ShardedHashSetTest extends HashSetTest {
+    @Override
+    protected <E> Set<E> newSet() {
+        return new ShardedHashSet<>();
+    }
+
+    @Test
+    public void shardsTest() {
+        ShardedHashSet<Integer> set = new ShardedHashSet<>(8, false, 100000);
+        for (int i = 0; i < 100000; i++) assertTrue(set.add(i));
+        assertEquals(8, set.shardCount());
+        assertEquals(100000L, set.longSize());
+        assertEquals(100000, set.size());
+        for (int i = 0; i < 200000; i++) assertEquals(i < 100000, set.contains(i));
+
+        ShardedHashSet<Integer> single = new ShardedHashSet<>(1, false);
+        for (int i = 0; i < 1000; i++) single.add(i);
+        assertEquals(new java.util.HashSet<>(single), new java.util.HashSet<>(set.stream()
+                .filter(i -> i < 1000).collect(Collectors.toSet())));
+    }
+
+    @Test
+    public void iteratorRemoveTest() {
+        for (int i = 0; i < 10000; i++) hashSet.add("key" + i);
+        Iterator<String> iterator = hashSet.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().hashCode() % 2 == 0) iterator.remove();
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(("key" + i).hashCode() % 2 != 0, hashSet.contains("key" + i));
+        }
+    }
+
+    /**
+     * parallelStream делит сет сначала по шардам, а потом по ячейкам
+     */
+    @Test
+    public void parallelTest() {
+        for (boolean concurrent : new boolean[]{false, true}) {
+            ShardedHashSet<Integer> set = new ShardedHashSet<>(16, concurrent);
+            for (int i = 0; i < 100000; i++) set.add(i);
+            assertEquals(99999L * 100000 / 2, set.parallelStream().mapToLong(i -> i).sum());
+            assertEquals(50000, set.parallelStream().filter(i -> i % 2 == 0).count());
+
+            List<Spliterator<Integer>> parts = new ArrayList<>();
+            parts.add(set.spliterator());
+            for (int round = 0; round < 6; round++) {
+                List<Spliterator<Integer>> next = new ArrayList<>();
+                for (Spliterator<Integer> part : parts) {
+                    Spliterator<Integer> prefix = part.trySplit();
+                    if (prefix != null) next.add(prefix);
+                    next.add(part);
+                }
+                parts = next;
+            }
+            assertTrue(parts.size() > 16);
+            Set<Integer> seen = new java.util.HashSet<>();
+            for (Spliterator<Integer> part : parts) part.forEachRemaining(i -> assertTrue(seen.add(i)));
+            assertEquals(100000, seen.size());
+        }
+    }
+
+    @Test
+    public void concurrentAddTest() throws Exception {
+        /**
+         * Каждый поток добавляет свои ключи и удаляет их с отставанием
+         * на 1000, а все вместе - общие ключи, каждый из которых должен
+         * быть добавлен ровно одним потоком
+         */
+        final ShardedHashSet<Integer> set = new ShardedHashSet<>(16, true);
+        final AtomicInteger added = new AtomicInteger();
+        final int keys = 100000;
+        ConcurrentHashSetTest.runConcurrently(new ConcurrentHashSetTest.ThreadTask() {
+            @Override
+            public void run(int thread) {
+                for (int i = 0; i < keys; i++) {
+                    assertTrue(set.add(keys * (thread + 1) + i));
+                    if (i >= 1000) assertTrue(set.remove(keys * (thread + 1) + i - 1000));
+                    if (set.add(-i)) added.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(keys, added.get());
+        assertEquals(keys + ConcurrentHashSetTest.THREADS * 1000L, set.longSize());
+        assertEquals(set.size(), set.toArray().length);
+    }
+
+    /**
+     * Обход с блокировками идет по копиям шардов: изменения из другого
+     * потока не приводят к ConcurrentModificationException
+     */
+    @Test
+    public void concurrentIterateTest() throws Exception {
+        final ShardedHashSet<Integer> set = new ShardedHashSet<>(4, true);
+        for (int i = 0; i < 10000; i++) set.add(-i - 1);
+        ConcurrentHashSetTest.runConcurrently(new ConcurrentHashSetTest.ThreadTask() {
+            @Override
+            public void run(int thread) {
+                for (int round = 0; round < 20; round++) {
+                    if (thread == 0) {
+                        for (int i = 0; i < 10000; i++) {
+                            set.add(i);
+                            set.remove(i);
+                        }
+                    } else {
+                        int permanent = 0;
+                        for (int e : set) {
+                            if (e < 0) permanent++;
+                        }
+                        assertEquals(10000, permanent);
+                    }
+                }
+            }
+        });
+        assertEquals(10000, set.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongShardsTest() {
+        new ShardedHashSet<String>(6, false);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * SipHash-2-4 - хэш-функция с секретным 128-битным ключом (k0, k1).
+ * Не зная ключа, нельзя заранее подобрать строки с одинаковым хэшем,
+ * поэтому HashSet переходит на нее, если кто-то специально присылает
+ * ключи с одинаковым hashCode().
+ */
+final class SipHash {
+    private SipHash() {
+    }
+
+    static long hash(long k0, long k1, byte[] data) {
+        State s = new State(k0, k1);
+        int end = data.length & ~7;
+        for (int i = 0; i < end; i += 8) {
+            long m = 0;
+            for (int j = 7; j >= 0; j--) m = (m << 8) | (data[i + j] & 0xFFL);
+            s.compress(m);
+        }
+        long last = (long) data.length << 56;
+        for (int j = data.length - end - 1; j >= 0; j--) last |= (data[end + j] & 0xFFL) << (8 * j);
+        return s.finish(last);
+    }
+
+    /**
+     * Хэш строки как массива байт UTF-16LE, но без создания этого массива:
+     * в одно 64-битное слово попадают 4 символа
+     */
+    static long hash(long k0, long k1, CharSequence data) {
+        State s = new State(k0, k1);
+        int length = data.length();
+        int end = length & ~3;
+        for (int i = 0; i < end; i += 4) {
+            s.compress(data.charAt(i) | (long) data.charAt(i + 1) << 16
+                    | (long) data.charAt(i + 2) << 32 | (long) data.charAt(i + 3) << 48);
+        }
+        long last = (long) (2 * length) << 56;
+        for (int j = length - end - 1; j >= 0; j--) last |= (long) data.charAt(end + j) << (16 * j);
+        return s.finish(last);
+    }
+
+    private static final class State {
+        long v0;
+        long v1;
+        long v2;
+        long v3;
+
+        State(long k0, long k1) {
+            v0 = k0 ^ 0x736F6D6570736575L;
+            v1 = k1 ^ 0x646F72616E646F6DL;
+            v2 = k0 ^ 0x6C7967656E657261L;
+            v3 = k1 ^ 0x7465646279746573L;
+        }
+
+        void compress(long m) {
+            v3 ^= m;
+            round();
+            round();
+            v0 ^= m;
+        }
+
+        /**
+         * last - последнее слово: длина в старшем байте и оставшиеся байты
+         */
+        long finish(long last) {
+            compress(last);
+            v2 ^= 0xFF;
+            round();
+            round();
+            round();
+            round();
+            return v0 ^ v1 ^ v2 ^ v3;
+        }
+
+        private void round() {
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13);
+            v1 ^= v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16);
+            v3 ^= v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21);
+            v3 ^= v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17);
+            v1 ^= v2;
+            v2 = Long.rotateLeft(v2, 32);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SipHashTest {
+    /**
+     * Ключ 00 01 .. 0f из статьи про SipHash
+     */
+    private static final long K0 = 0x0706050403020100L;
+    private static final long K1 = 0x0F0E0D0C0B0A0908L;
+
+    private static byte[] bytes(int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) result[i] = (byte) i;
+        return result;
+    }
+
+    @Test
+    public void referenceVectorsTest() {
+        assertEquals(0x726FDB47DD0E0E31L, SipHash.hash(K0, K1, bytes(0)));
+        assertEquals(0x74F839C593DC67FDL, SipHash.hash(K0, K1, bytes(1)));
+        assertEquals(0x93F5F5799A932462L, SipHash.hash(K0, K1, bytes(8)));
+        assertEquals(0xA129CA6149BE45E5L, SipHash.hash(K0, K1, bytes(15)));
+        assertEquals(0x958A324CEB064572L, SipHash.hash(K0, K1, bytes(63)));
+    }
+
+    @Test
+    public void charSequenceTest() {
+        String[] strings = {"", "a", "Aa", "BB", "Привет", "https://example.com/item/12345"};
+        for (String s : strings) {
+            assertEquals(SipHash.hash(K0, K1, s.getBytes(StandardCharsets.UTF_16LE)), SipHash.hash(K0, K1, s));
+        }
+        assertNotEquals(SipHash.hash(K0, K1, "Aa"), SipHash.hash(K0, K1, "BB"));
+        assertNotEquals(SipHash.hash(K0, K1, "Aa"), SipHash.hash(K0 + 1, K1, "Aa"));
+    }
+}
@@ -0,0 +1,353 @@
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * Хэш-сет в стиле Swiss table.
+ *
+ * Кроме массива элементов есть массив управляющих байтов, по одному на
+ * ячейку: EMPTY - пусто, DELETED - удален, а у занятой ячейки в байте
+ * лежат младшие 7 бит хэша элемента (старший бит 0). Байты хранятся по
+ * 8 штук в одном long (группа). При поиске за несколько операций над
+ * long (SWAR - SIMD within a register) находим сразу все ячейки группы,
+ * где 7 бит совпали, и только для них вызываем equals. Если в группе есть
+ * пустая ячейка, то элемента нет - в массив элементов при этом мы вообще
+ * не заглядываем, поэтому промахи обходятся особенно дешево.
+ *
+ * Группы перебираются с шагом 1, 2, 3... (треугольные числа), при числе
+ * групп, равном степени 2, так обходятся все группы.
+ */
+public class SwissHashSet<T> implements Set<T> {
+    private static final double MAX_FULLNESS = 0.875;
+    private static final int INITIAL_SIZE = 128;
+    private static final int MAX_SIZE = 1 << 30;
+    private static final int GROUP_SIZE = 8;
+    private static final long EMPTY = 0x80;
+    private static final long DELETED = 0xFE;
+    /**
+     * Единица в младшем и в старшем бите каждого байта long
+     */
+    private static final long LSB = 0x0101010101010101L;
+    private static final long MSB = 0x8080808080808080L;
+
+    /**
+     * ctrl[g] - управляющие байты ячеек 8g..8g+7, байт ячейки 8g+i
+     * лежит в битах 8i..8i+7
+     */
+    private long[] ctrl;
+    /**
+     * Элементы, null в пустых и удаленных ячейках
+     */
+    private Object[] array;
+    private int realSize;
+    private int deletedSize;
+    private int groupMask;
+
+    SwissHashSet() {
+        init(INITIAL_SIZE);
+    }
+
+    private void init(int size) {
+        array = new Object[size];
+        ctrl = new long[size / GROUP_SIZE];
+        Arrays.fill(ctrl, EMPTY * LSB);
+        groupMask = ctrl.length - 1;
+        realSize = 0;
+        deletedSize = 0;
+    }
+
+    @Override
+    public int size() {
+        return realSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return realSize == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        return indexOf(o, hash(o.hashCode())) != -1;
+    }
+
+    private int indexOf(Object o, int hash) {
+        int group = (hash >>> 7) & groupMask;
+        for (int step = 1; step <= ctrl.length; step++) {
+            long word = ctrl[group];
+            for (long m = match(word, hash & 0x7F); m != 0; m &= m - 1) {
+                int index = group * GROUP_SIZE + (Long.numberOfTrailingZeros(m) >>> 3);
+                if (o.equals(array[index])) return index;
+            }
+            if (matchEmpty(word) != 0) return -1;
+            group = (group + step) & groupMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Байты группы, равные h2. Вычитание единицы из нулевого байта дает заем
+     * и поднимает его старший бит, поэтому совпадения видны по старшим битам.
+     * Заем может дать ложное совпадение в соседнем байте, но это не страшно -
+     * кандидат все равно проверяется через equals.
+     */
+    private static long match(long word, int h2) {
+        long x = word ^ (LSB * h2);
+        return (x - LSB) & ~x & MSB;
+    }
+
+    /**
+     * Байты, равные EMPTY (1000_0000). У DELETED (1111_1110) тоже старший
+     * бит 1, но второй бит у него 1, а у EMPTY 0 - по нему и различаем.
+     */
+    private static long matchEmpty(long word) {
+        return word & (~word << 6) & MSB;
+    }
+
+    /**
+     * Байты с единичным старшим битом, то есть EMPTY или DELETED
+     */
+    private static long matchFree(long word) {
+        return word & MSB;
+    }
+
+    private long ctrlAt(int index) {
+        return (ctrl[index / GROUP_SIZE] >>> ((index % GROUP_SIZE) * 8)) & 0xFF;
+    }
+
+    private void setCtrl(int index, long value) {
+        int shift = (index % GROUP_SIZE) * 8;
+        int group = index / GROUP_SIZE;
+        ctrl[group] = (ctrl[group] & ~(0xFFL << shift)) | (value << shift);
+    }
+
+    /**
+     * Из хэша берутся и номер группы (старшие биты), и 7 бит для
+     * управляющего байта (младшие), поэтому перемешивание должно быть
+     * хорошим по всем битам. Это финальный шаг MurmurHash3.
+     */
+    private static int hash(int hashCode) {
+        int h = hashCode;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Один проход: ищем такой же элемент и по пути запоминаем первую
+     * свободную (пустую или удаленную) ячейку.
+     */
+    @Override
+    public boolean add(T t) {
+        if (t == null) return false;
+        int hash = hash(t.hashCode());
+        int group = (hash >>> 7) & groupMask;
+        int whereAdd = -1;
+        for (int step = 1; step <= ctrl.length; step++) {
+            long word = ctrl[group];
+            for (long m = match(word, hash & 0x7F); m != 0; m &= m - 1) {
+                int index = group * GROUP_SIZE + (Long.numberOfTrailingZeros(m) >>> 3);
+                if (t.equals(array[index])) return false;
+            }
+            long free = matchFree(word);
+            if (whereAdd == -1 && free != 0) {
+                whereAdd = group * GROUP_SIZE + (Long.numberOfTrailingZeros(free) >>> 3);
+            }
+            if (matchEmpty(word) != 0) break;
+            group = (group + step) & groupMask;
+        }
+        if (ctrlAt(whereAdd) == DELETED) {
+            deletedSize--;
+        } else if ((double) (realSize + deletedSize + 1) / array.length > MAX_FULLNESS) {
+            if (!resize()) return false;
+            whereAdd = freeSlot(hash);
+        }
+        setCtrl(whereAdd, hash & 0x7F);
+        array[whereAdd] = t;
+        realSize++;
+        return true;
+    }
+
+    /**
+     * Первая свободная ячейка для хэша, когда точно известно,
+     * что такого элемента нет
+     */
+    private int freeSlot(int hash) {
+        int group = (hash >>> 7) & groupMask;
+        for (int step = 1; ; step++) {
+            long free = matchFree(ctrl[group]);
+            if (free != 0) return group * GROUP_SIZE + (Long.numberOfTrailingZeros(free) >>> 3);
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * Как в HashSet: если удаленных больше, чем живых, то просто
+     * раскладываем заново в массив того же размера, иначе в 2 раза больше.
+     * Хэши не хранятся, поэтому здесь hashCode() вызывается заново.
+     */
+    private boolean resize() {
+        int newSize = array.length;
+        if (deletedSize <= realSize) {
+            if (newSize >= MAX_SIZE) return false;
+            newSize *= 2;
+        }
+        Object[] oldArray = array;
+        int size = realSize;
+        init(newSize);
+        for (Object o : oldArray) {
+            if (o != null) {
+                int hash = hash(o.hashCode());
+                int index = freeSlot(hash);
+                setCtrl(index, hash & 0x7F);
+                array[index] = o;
+            }
+        }
+        realSize = size;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        int index = indexOf(o, hash(o.hashCode()));
+        if (index == -1) return false;
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Если в группе есть пустая ячейка, то ни один поиск не проходил через
+     * эту группу дальше, и ячейку можно сразу сделать пустой. Иначе ставим
+     * DELETED, чтобы не оборвать цепочку для элементов из следующих групп.
+     */
+    private void removeAt(int index) {
+        array[index] = null;
+        if (matchEmpty(ctrl[index / GROUP_SIZE]) != 0) {
+            setCtrl(index, EMPTY);
+        } else {
+            setCtrl(index, DELETED);
+            deletedSize++;
+        }
+        realSize--;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new SwissIterator();
+    }
+
+    private final class SwissIterator implements Iterator<T> {
+        int remaining = realSize;
+        int from = 0;
+        int current = -1;
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            while (array[from] == null) from++;
+            current = from++;
+            remaining--;
+            return (T) array[current];
+        }
+
+        @Override
+        public void remove() {
+            if (current == -1) throw new IllegalStateException();
+            removeAt(current);
+            current = -1;
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toArray(new Object[realSize]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T1> T1[] toArray(T1[] a) {
+        if (a.length < realSize) {
+            a = (T1[]) Array.newInstance(a.getClass().getComponentType(), realSize);
+        }
+        int i = 0;
+        for (Object e : array) {
+            if (e != null) a[i++] = (T1) e;
+        }
+        if (a.length > realSize) a[realSize] = null;
+        return a;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        Objects.requireNonNull(c);
+        boolean result = false;
+        for (T t : c) {
+            if (add(t)) result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        boolean modified = false;
+        Iterator<T> iterator = iterator();
+        while (iterator.hasNext()) {
+            if (!c.contains(iterator.next())) {
+                iterator.remove();
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        boolean result = false;
+        for (Object t : c) {
+            if (remove(t)) result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        init(INITIAL_SIZE);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Set)) return false;
+        Set<?> set = (Set<?>) obj;
+        return set.size() == size() && containsAll(set);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Object e : array) {
+            if (e != null) h += e.hashCode();
+        }
+        return h;
+    }
+}
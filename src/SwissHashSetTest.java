@@ -0,0 +1,58 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SwissHashSetTest extends HashSetTest {
+    @Override
+    protected <E> Set<E> newSet() {
+        return new SwissHashSet<>();
+    }
+
+    /**
+     * Ключи с одинаковым hashCode попадают в одну группу с одинаковыми
+     * управляющими байтами, так что различить их может только equals
+     */
+    private static final class Collision {
+        final int id;
+
+        Collision(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Collision && ((Collision) obj).id == id;
+        }
+    }
+
+    @Test
+    public void collisionTest() {
+        Set<Collision> set = newSet();
+        for (int i = 0; i < 100; i++) assertTrue(set.add(new Collision(i)));
+        for (int i = 0; i < 100; i += 2) assertTrue(set.remove(new Collision(i)));
+        for (int i = 0; i < 100; i++) assertEquals(i % 2 == 1, set.contains(new Collision(i)));
+        assertFalse(set.contains(new Collision(100)));
+        assertTrue(set.size() == 50);
+    }
+
+    @Test
+    public void randomTest() {
+        Set<Integer> set = newSet();
+        Set<Integer> expected = new java.util.HashSet<>();
+        Random random = new Random(1720557871);
+        for (int i = 0; i < 300000; i++) {
+            int key = random.nextInt(20000);
+            if (random.nextInt(3) > 0) assertEquals(expected.add(key), set.add(key));
+            else assertEquals(expected.remove(key), set.remove(key));
+        }
+        assertEquals(expected, set);
+        for (int i = 0; i < 20000; i++) assertEquals(expected.contains(i), set.contains(i));
+    }
+}